@@ -1,6 +1,7 @@
 package com.a4sync.client.config;
 
 import com.a4sync.client.model.Repository;
+import com.a4sync.common.model.DownloadSettings;
 import com.a4sync.common.model.GameType;
 import lombok.Data;
 import java.nio.file.Path;
@@ -35,6 +36,7 @@ public class ClientConfig {
     private Path steamPath;
     private Path gamePath;
     private GameOptions defaultGameOptions = new GameOptions();
+    private DownloadSettings downloadSettings = new DownloadSettings();
 
     public void addModDirectory(Path path) {
         if (!modDirectories.contains(path)) {
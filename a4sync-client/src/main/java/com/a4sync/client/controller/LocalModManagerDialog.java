@@ -2,7 +2,7 @@ package com.a4sync.client.controller;
 
 import lombok.extern.slf4j.Slf4j;
 import com.a4sync.client.config.ClientConfig;
-import com.a4sync.client.service.LocalModRepository;
+import com.a4sync.client.service.LocalLibraryScanner;
 import com.a4sync.client.service.ModManager;
 import com.a4sync.common.model.Mod;
 import com.a4sync.common.model.ModSet;
@@ -24,11 +24,14 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.attribute.FileTime;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import lombok.extern.slf4j.Slf4j;
@@ -92,7 +95,8 @@ public class LocalModManagerDialog extends Stage {
 
     private final ClientConfig config;
     private final ModManager modManager;
-    private final LocalModRepository localModRepo;
+    private final LocalLibraryScanner libraryScanner;
+    private LocalLibraryScanner.Scan currentScan;
     
     private TabPane mainTabPane;
     private TableView<LocalModInfo> localModsTable;
@@ -113,7 +117,7 @@ public class LocalModManagerDialog extends Stage {
     public LocalModManagerDialog(ClientConfig config) {
         this.config = config;
         this.modManager = new ModManager(config);
-        this.localModRepo = new LocalModRepository(config);
+        this.libraryScanner = new LocalLibraryScanner();
         this.localMods = FXCollections.observableArrayList();
         this.localModSets = FXCollections.observableArrayList();
         
@@ -124,6 +128,11 @@ public class LocalModManagerDialog extends Stage {
         setWidth(1000);
         setHeight(700);
         initModality(Modality.APPLICATION_MODAL);
+        setOnHidden(e -> {
+            if (currentScan != null) {
+                currentScan.cancel();
+            }
+        });
     }
     
     private void initializeUI() {
@@ -407,78 +416,71 @@ public class LocalModManagerDialog extends Stage {
     }
     
     private void scanLocalContent() {
-        Task<Void> scanTask = new Task<Void>() {
-            @Override
-            protected Void call() throws Exception {
-                Platform.runLater(() -> {
-                    totalModsLabel.setText("Scanning mods...");
-                    totalModSetsLabel.setText("Scanning mod sets...");
-                });
-                
-                scanLocalMods();
-                scanLocalModSets();
-                
-                Platform.runLater(() -> {
-                    lastScanLabel.setText("Last Scan: " + 
-                        LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
-                    updateStatistics();
-                });
-                
-                return null;
+        if (currentScan != null) {
+            currentScan.cancel();
+        }
+        totalModsLabel.setText("Scanning mods...");
+        totalModSetsLabel.setText("Scanning mod sets...");
+        
+        // Rows appear as mods are found; known mods first from the local file state
+        // Rows of a scan that was replaced or cancelled may still be queued; skip them
+        AtomicReference<LocalLibraryScanner.Scan> producer = new AtomicReference<>();
+        LocalLibraryScanner.Scan scan = libraryScanner.scan(config.getModDirectories(), mod -> {
+            LocalModInfo info = createLocalModInfo(mod);
+            Platform.runLater(() -> {
+                LocalLibraryScanner.Scan source = producer.get();
+                if (source == currentScan && !source.isCancelled()) {
+                    showLocalMod(info);
+                }
+            });
+        });
+        producer.set(scan);
+        currentScan = scan;
+        scan.result().whenComplete((mods, error) -> Platform.runLater(() -> {
+            if (scan != currentScan || scan.isCancelled()) {
+                return;
             }
-        };
+            if (error != null) {
+                log.error("Failed to scan local mods", error);
+            } else {
+                // Drop rows of mods that no longer exist
+                Set<String> found = mods.stream().map(LocalLibraryScanner.ScannedMod::getPath).collect(Collectors.toSet());
+                localMods.removeIf(mod -> !found.contains(mod.getPath()));
+            }
+            lastScanLabel.setText("Last Scan: " + 
+                LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss")));
+            updateStatistics();
+        }));
         
-        new Thread(scanTask).start();
+        scanLocalModSets();
     }
     
-    private void scanLocalMods() {
-        List<LocalModInfo> mods = new ArrayList<>();
-        
-        for (Path directory : config.getModDirectories()) {
-            if (!Files.exists(directory)) continue;
-            
-            try (Stream<Path> paths = Files.list(directory)) {
-                paths.filter(Files::isDirectory)
-                     .filter(p -> p.getFileName().toString().startsWith("@"))
-                     .forEach(modPath -> {
-                         try {
-                             LocalModInfo modInfo = createLocalModInfo(modPath);
-                             mods.add(modInfo);
-                         } catch (Exception e) {
-                             log.warn("Failed to scan mod: " + modPath, e);
-                         }
-                     });
-            } catch (IOException e) {
-                log.error("Failed to scan directory: " + directory, e);
+    /**
+     * Adds the mod to the table, or replaces the row of the same folder.
+     */
+    private void showLocalMod(LocalModInfo info) {
+        for (int i = 0; i < localMods.size(); i++) {
+            if (localMods.get(i).getPath().equals(info.getPath())) {
+                localMods.set(i, info);
+                updateStatistics();
+                return;
             }
         }
-        
-        Platform.runLater(() -> {
-            localMods.clear();
-            localMods.addAll(mods);
-        });
+        localMods.add(info);
+        updateStatistics();
     }
     
-    private LocalModInfo createLocalModInfo(Path modPath) throws IOException {
+    private LocalModInfo createLocalModInfo(LocalLibraryScanner.ScannedMod mod) {
+        Path modPath = Paths.get(mod.getPath());
         LocalModInfo info = new LocalModInfo();
-        info.setName(modPath.getFileName().toString());
-        info.setPath(modPath.toString());
-        
-        // Calculate mod size
-        long size = Files.walk(modPath)
-            .filter(Files::isRegularFile)
-            .mapToLong(p -> {
-                try {
-                    return Files.size(p);
-                } catch (IOException e) {
-                    return 0;
-                }
-            }).sum();
-        info.setSize(size);
+        info.setName(mod.getName());
+        info.setPath(mod.getPath());
+        info.setSize(mod.getSize());
+        info.setFiles(mod.getFiles());
         
         // Get last modified time
         info.setLastModified(LocalDateTime.ofInstant(
-            Files.getLastModifiedTime(modPath).toInstant(),
+            Instant.ofEpochMilli(mod.getLastModified()),
             java.time.ZoneId.systemDefault()));
         
         // Determine status - simplified check for local files
@@ -668,7 +670,11 @@ public class LocalModManagerDialog extends Stage {
         
         modDetailsArea.setText(details.toString());
         
-        // Load files list
+        // Load files list, unless the scan already listed them
+        if (mod.getFiles() != null) {
+            modFilesList.getItems().setAll(mod.getFiles());
+            return;
+        }
         Task<List<String>> filesTask = new Task<List<String>>() {
             @Override
             protected List<String> call() throws Exception {
@@ -684,7 +690,9 @@ public class LocalModManagerDialog extends Stage {
         };
         
         filesTask.setOnSucceeded(e -> modFilesList.getItems().setAll(filesTask.getValue()));
-        new Thread(filesTask).start();
+        Thread filesThread = new Thread(filesTask);
+        filesThread.setDaemon(true);
+        filesThread.start();
     }
     
     private void updateStatistics() {
@@ -778,6 +786,7 @@ public class LocalModManagerDialog extends Stage {
         private String status;
         private long size;
         private LocalDateTime lastModified;
+        private List<String> files;
         
         // Getters and setters
         public String getName() { return name; }
@@ -797,6 +806,9 @@ public class LocalModManagerDialog extends Stage {
         
         public LocalDateTime getLastModified() { return lastModified; }
         public void setLastModified(LocalDateTime lastModified) { this.lastModified = lastModified; }
+        
+        public List<String> getFiles() { return files; }
+        public void setFiles(List<String> files) { this.files = files; }
     }
     
 
@@ -38,6 +38,7 @@ import com.a4sync.client.model.Repository;
 import com.a4sync.client.model.RepositoryModSet;
 import com.a4sync.client.model.ModSetStatus;
 import com.a4sync.client.service.GameLauncher;
+import com.a4sync.client.service.MirrorMonitor;
 import com.a4sync.client.service.ModManager;
 import com.a4sync.client.service.ModSetDownloadService;
 import com.a4sync.client.service.MultiRepositoryService;
@@ -133,7 +134,7 @@ public class MainController {
             new SimpleStringProperty(cellData.getValue().getSize() > 0 ? formatSize(cellData.getValue().getSize()) : "Mod Set"));
         modStatusColumn.setCellValueFactory(cellData -> 
             new SimpleStringProperty(cellData.getValue().getSize() > 0 ? 
-                (modManager.isModInstalled(cellData.getValue()) ? "Installed" : "Download") : "Select"));
+                modStatus(cellData.getValue()) : "Select"));
             
         
         
@@ -354,67 +355,22 @@ public class MainController {
         // Show progress indicator
         showInfo("Refreshing", "Testing connections for all repositories...");
         
-        // Test all repositories in background thread to avoid blocking UI
-        Task<Void> refreshTask = new Task<Void>() {
-            @Override
-            protected Void call() throws Exception {
-                int total = repositories.size();
-                int current = 0;
-                
-                for (Repository repo : repositories) {
-                    current++;
-                    updateProgress(current, total);
-                    updateMessage("Testing " + repo.getName() + "...");
-                    
-                    // Test repository connection
-                    try {
-                        // Create temporary config for this specific repository
-                        ClientConfig tempConfig = new ClientConfig();
-                        tempConfig.setServerUrl(repo.getUrl());
-                        tempConfig.setRepositoryPassword(repo.getPassword());
-                        tempConfig.setUseAuthentication(repo.isUseAuthentication());
-                        
-                        RepositoryService repoService = new RepositoryService(tempConfig);
-                        
-                        // Use the async method and wait for result
-                        HealthStatus healthStatus = repoService.testConnectionAsync().get();
-                        Platform.runLater(() -> {
-                            repo.setHealthStatus(healthStatus);
-                            repo.setLastChecked(LocalDateTime.now());
-                        });
-                    } catch (Exception e) {
-                        Platform.runLater(() -> {
-                            repo.setHealthStatus(HealthStatus.ERROR);
-                            repo.setLastChecked(LocalDateTime.now());
-                        });
-                    }
-                    
-                    // Small delay to prevent overwhelming servers
-                    Thread.sleep(100);
-                }
-                return null;
-            }
-            
-            @Override
-            protected void succeeded() {
-                Platform.runLater(() -> {
+        // Probe all repositories at once; each row updates as soon as its answer arrives
+        multiRepositoryService.testConnections(List.copyOf(repositories), (repo, healthStatus) ->
+            Platform.runLater(() -> {
+                repo.setHealthStatus(healthStatus);
+                repo.setLastChecked(LocalDateTime.now());
+                repositoryStatusTable.refresh();
+            }))
+            .whenComplete((results, error) -> Platform.runLater(() -> {
+                if (error != null) {
+                    showError("Refresh Failed", "An error occurred while refreshing repositories: " + 
+                             error.getMessage());
+                } else {
                     repositoryStatusTable.refresh();
                     showInfo("Refresh Complete", "All repository connections have been tested.");
-                });
-            }
-            
-            @Override
-            protected void failed() {
-                Platform.runLater(() -> {
-                    showError("Refresh Failed", "An error occurred while refreshing repositories: " + 
-                             getException().getMessage());
-                });
-            }
-        };
-        
-        Thread refreshThread = new Thread(refreshTask);
-        refreshThread.setDaemon(true);
-        refreshThread.start();
+                }
+            }));
     }
 
     @FXML
@@ -694,6 +650,8 @@ public class MainController {
         // Create repository service for the connected repository
         RepositoryService repositoryService = new RepositoryService(config);
         repositoryService.setRepositoryUrl(connectedRepo.getUrl());
+        // File segments are spread over the repository's mirrors and fail over between them
+        MirrorMonitor.shared().register(connectedRepo.getUrl(), connectedRepo.getMirrorUrls());
         
         showInfo("Modset Download Starting", "Starting download of modset '" + modSetName + 
                 "' from " + connectedRepo.getName() + 
@@ -722,8 +680,7 @@ public class MainController {
                     progress -> {
                         // Update UI with download progress
                         Platform.runLater(() -> {
-                            double overallProgress = (double) progress.getCompletedMods() / progress.getTotalMods();
-                            downloadProgress.setProgress(overallProgress);
+                            downloadProgress.setProgress(progress.getOverallProgress());
                             statusLabel.setText(String.format("Downloading modset '%s': %s (%d/%d mods completed)", 
                                 modSetName, 
                                 progress.getCurrentModName(), 
@@ -849,7 +806,14 @@ public class MainController {
     }
     
 
-    
+
+    private String modStatus(Mod mod) {
+        if (modManager.isModInstalled(mod)) {
+            return "Installed";
+        }
+        return modManager.isModPresent(mod) ? "Update" : "Download";
+    }
+
     private String formatSize(long bytes) {
         if (bytes <= 0) return "Unknown";
         if (bytes < 1024) return bytes + " B";
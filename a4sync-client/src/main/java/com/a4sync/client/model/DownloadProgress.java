@@ -8,7 +8,7 @@ import java.util.concurrent.atomic.AtomicLong;
  */
 @Data
 public class DownloadProgress {
-    private final long totalBytes;
+    private volatile long totalBytes;
     private final AtomicLong downloadedBytes = new AtomicLong(0);
     private final long startTime = System.currentTimeMillis();
     private volatile boolean cancelled = false;
@@ -35,6 +35,13 @@ public class DownloadProgress {
         return (totalBytes - downloadedBytes.get()) / speed;
     }
     
+    /**
+     * Grows the total when more has to be transferred than planned.
+     */
+    public synchronized void addTotalBytes(long bytes) {
+        totalBytes += bytes;
+    }
+    
     public boolean isCancelled() {
         return cancelled;
     }
@@ -1,47 +1,111 @@
 package com.a4sync.client.model;
 
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
- * Progress tracking for mod set downloads
+ * Progress tracking for mod set downloads. Several mods can be in flight at once; their
+ * individual progress is combined into the overall figures.
  */
 public class ModSetDownloadProgress {
     private final int totalMods;
     private final AtomicInteger completedMods = new AtomicInteger(0);
     private final AtomicInteger failedMods = new AtomicInteger(0);
-    private volatile String currentModName = "";
-    private volatile double currentModProgress = 0.0;
+    private final Map<String, ModTransfer> activeMods = new ConcurrentHashMap<>();
+    private final AtomicLong finishedBytes = new AtomicLong(0);
     private final long startTime = System.currentTimeMillis();
     private volatile boolean cancelled = false;
-    
+
+    private static final class ModTransfer {
+        private volatile long downloadedBytes;
+        private volatile long totalBytes;
+
+        private double fraction() {
+            return totalBytes <= 0 ? 0.0 : Math.min(1.0, (double) downloadedBytes / totalBytes);
+        }
+    }
+
     public ModSetDownloadProgress(int totalMods) {
         this.totalMods = totalMods;
     }
-    
+
     public int getTotalMods() { return totalMods; }
     public int getCompletedMods() { return completedMods.get(); }
     public int getFailedMods() { return failedMods.get(); }
-    public String getCurrentModName() { return currentModName; }
-    public double getCurrentModProgress() { return currentModProgress; }
     public boolean isCancelled() { return cancelled; }
     public void cancel() { this.cancelled = true; }
-    
+
+    /**
+     * Names of the mods currently being downloaded.
+     */
+    public List<String> getActiveMods() {
+        return List.copyOf(activeMods.keySet());
+    }
+
+    public String getCurrentModName() {
+        List<String> active = getActiveMods();
+        if (active.size() <= 2) {
+            return String.join(", ", active);
+        }
+        return active.get(0) + ", " + active.get(1) + " (+" + (active.size() - 2) + " more)";
+    }
+
+    /**
+     * Average progress of the mods in flight, between 0 and 1.
+     */
+    public double getCurrentModProgress() {
+        return activeMods.values().stream().mapToDouble(ModTransfer::fraction).average().orElse(0.0);
+    }
+
     public double getOverallProgress() {
         if (totalMods == 0) return 1.0;
-        return (double) (completedMods.get() + failedMods.get()) / totalMods;
+        double inFlight = activeMods.values().stream().mapToDouble(ModTransfer::fraction).sum();
+        return (completedMods.get() + failedMods.get() + inFlight) / totalMods;
+    }
+
+    /**
+     * Bytes transferred so far across all mods of the set.
+     */
+    public long getDownloadedBytes() {
+        return finishedBytes.get() + activeMods.values().stream().mapToLong(transfer -> transfer.downloadedBytes).sum();
     }
-    
+
+    public long getDownloadSpeed() {
+        long elapsed = System.currentTimeMillis() - startTime;
+        if (elapsed <= 0) return 0;
+        return (getDownloadedBytes() * 1000) / elapsed; // bytes per second
+    }
+
     public long getEstimatedTimeRemaining() {
         long elapsed = System.currentTimeMillis() - startTime;
-        if (elapsed == 0 || completedMods.get() == 0) return -1;
-        
-        long avgTimePerMod = elapsed / completedMods.get();
-        int remainingMods = totalMods - completedMods.get() - failedMods.get();
-        return avgTimePerMod * remainingMods;
-    }
-    
-    public void setCurrentMod(String modName) { this.currentModName = modName; }
-    public void setCurrentModProgress(double progress) { this.currentModProgress = progress; }
+        double done = getOverallProgress();
+        if (elapsed == 0 || done <= 0.0) return -1;
+
+        return (long) (elapsed * (1.0 - done) / done);
+    }
+
+    public void startMod(String modName) {
+        activeMods.put(modName, new ModTransfer());
+    }
+
+    public void updateMod(String modName, long downloadedBytes, long totalBytes) {
+        ModTransfer transfer = activeMods.get(modName);
+        if (transfer != null) {
+            transfer.totalBytes = totalBytes;
+            transfer.downloadedBytes = downloadedBytes;
+        }
+    }
+
+    public void finishMod(String modName) {
+        ModTransfer transfer = activeMods.remove(modName);
+        if (transfer != null) {
+            finishedBytes.addAndGet(transfer.downloadedBytes);
+        }
+    }
+
     public void incrementCompleted() { completedMods.incrementAndGet(); }
     public void incrementFailed() { failedMods.incrementAndGet(); }
-}
\ No newline at end of file
+}
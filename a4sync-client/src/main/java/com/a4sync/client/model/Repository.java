@@ -6,6 +6,8 @@ import lombok.NoArgsConstructor;
 import lombok.Getter;
 import lombok.Setter;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
 
 @Data
 @Getter
@@ -21,6 +23,8 @@ public class Repository {
     private boolean enabled = true;
     private boolean autoCheck = true;
     private String notes;
+    // Alternative base URLs serving the same content, tried when downloads need another source
+    private List<String> mirrorUrls = new ArrayList<>();
     
     // Status and monitoring fields
     private HealthStatus healthStatus = HealthStatus.UNKNOWN;
@@ -0,0 +1,50 @@
+package com.a4sync.client.model;
+
+import com.a4sync.common.model.ModFile;
+import lombok.Data;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Result of comparing a remote mod index with a local mod folder: which files have to be
+ * downloaded completely, which can be rebuilt mostly from content already present in the
+ * local copy and which are obsolete.
+ */
+@Data
+public class SyncPlan {
+    private final String modName;
+    private final List<ModFile> downloads = new ArrayList<>();
+    private final List<FileDelta> deltas = new ArrayList<>();
+    private final List<String> deletions = new ArrayList<>();
+    private int unchangedFiles;
+
+    /**
+     * A region of the new file version. {@code localOffset} points to identical content in the
+     * local copy, or is -1 if the region has to be downloaded.
+     */
+    public record Segment(long offset, long length, long localOffset) {
+        public boolean isLocal() {
+            return localOffset >= 0;
+        }
+    }
+
+    /**
+     * A changed file that is rebuilt from segments of the local copy, wherever they moved to,
+     * plus the segments missing locally.
+     */
+    public record FileDelta(ModFile file, List<Segment> segments) {
+        public long bytesToTransfer() {
+            return segments.stream().filter(segment -> !segment.isLocal()).mapToLong(Segment::length).sum();
+        }
+    }
+
+    public boolean isUpToDate() {
+        return downloads.isEmpty() && deltas.isEmpty() && deletions.isEmpty();
+    }
+
+    public long getBytesToTransfer() {
+        return downloads.stream().mapToLong(ModFile::getSize).sum()
+            + deltas.stream().mapToLong(FileDelta::bytesToTransfer).sum();
+    }
+}
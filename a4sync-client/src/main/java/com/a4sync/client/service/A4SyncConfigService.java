@@ -14,6 +14,7 @@ import java.net.http.HttpResponse;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.time.Duration;
+import java.util.ArrayList;
 import java.util.concurrent.CompletableFuture;
 
 @Slf4j
@@ -27,9 +28,7 @@ public class A4SyncConfigService {
         this.objectMapper.findAndRegisterModules(); // Auto-discover and register modules
         this.objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
         
-        this.httpClient = HttpClient.newBuilder()
-                .connectTimeout(Duration.ofSeconds(10))
-                .build();
+        this.httpClient = HttpClients.shared();
     }
     
     /**
@@ -103,6 +102,9 @@ public class A4SyncConfigService {
         repository.setName(config.getRepository().getName());
         repository.setUrl(baseUrl);
         repository.setNotes(config.getRepository().getDescription());
+        if (config.getConnection().getMirrorUrls() != null) {
+            repository.setMirrorUrls(new ArrayList<>(config.getConnection().getMirrorUrls()));
+        }
         
         // Map authentication settings
         if (config.getConnection().isRequiresAuthentication()) {
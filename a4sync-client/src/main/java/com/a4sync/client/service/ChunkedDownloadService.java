@@ -1,258 +1,765 @@
 package com.a4sync.client.service;
 
 import com.a4sync.client.model.DownloadProgress;
-import lombok.Data;
+import com.a4sync.common.model.DownloadSettings;
+import com.a4sync.common.model.ModChunk;
+import com.a4sync.common.sync.FileHasher;
+import com.a4sync.common.sync.HashAlgorithm;
+import com.a4sync.common.sync.Hasher;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.*;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
+/**
+ * Downloads files over several HTTP connections at once. The file is split into segments, which
+ * up to {@link DownloadSettings#getMaxParallelDownloads()} workers fetch with range requests and
+ * write at their own position into the preallocated target. Completed segments are recorded
+ * in a {@link DownloadJournal} next to the file, so an interrupted download resumes with the
+ * missing or corrupt segments only. Files smaller than two segments and servers without range
+ * support use a single connection and resume from the file length. Response bodies are written
+ * straight into the file channel as they arrive, without an intermediate stream.
+ * <p>
+ * Data is hashed while it streams in. When the index lists the chunks of a file, the segments
+ * are those chunks and each is checked against its hash as it completes, so a corrupt segment
+ * is fetched again on its own and the finished file needs no further verification. Otherwise
+ * segments are {@link DownloadSettings#getChunkSize()} bytes, and only segmented downloads
+ * without chunk hashes read the file back once to check the whole-file hash.
+ * <p>
+ * When the repository has mirrors, every request goes to the mirror the {@link MirrorMonitor}
+ * picks, so parallel segments are spread over mirrors. A segment whose mirror fails continues
+ * on another one from the last written byte, as does a single-connection download.
+ * <p>
+ * Every connection is subject to the {@link TransferLimiter} shared with other downloads.
+ * Progress callbacks may be invoked from several threads at once.
+ */
 @Slf4j
 public class ChunkedDownloadService {
-    
-    private static final int DEFAULT_CHUNK_SIZE = 1024 * 1024; // 1MB chunks
-    private static final int DEFAULT_BUFFER_SIZE = 8192; // 8KB buffer
+
+    // Smaller segments would spend more time on request round trips than on data
+    private static final long MIN_SEGMENT_SIZE = 256 * 1024;
     private static final int MAX_RETRIES = 3;
     private static final long RETRY_DELAY_MS = 1000;
-    
+    // Syncing data and journal costs a few milliseconds, so completed segments are batched
+    private static final long CHECKPOINT_INTERVAL_MS = 1000;
+
+    private final DownloadSettings settings;
+    private final TransferLimiter limiter;
+    private final HttpClient client;
+    private final MirrorMonitor mirrors;
+
+    public ChunkedDownloadService() {
+        this(new DownloadSettings());
+    }
+
+    public ChunkedDownloadService(DownloadSettings settings) {
+        this(settings, TransferLimiter.unlimited());
+    }
+
+    public ChunkedDownloadService(DownloadSettings settings, TransferLimiter limiter) {
+        this(settings, limiter, MirrorMonitor.shared());
+    }
+
+    public ChunkedDownloadService(DownloadSettings settings, TransferLimiter limiter, MirrorMonitor mirrors) {
+        this.settings = settings;
+        this.limiter = limiter;
+        this.mirrors = mirrors;
+        this.client = HttpClients.shared();
+    }
 
-    
     public CompletableFuture<Boolean> downloadFile(
-            String url, 
-            Path destinationPath, 
+            String url,
+            Path destinationPath,
             Consumer<DownloadProgress> progressCallback) {
         return downloadFile(url, destinationPath, null, progressCallback);
     }
-    
+
+    public CompletableFuture<Boolean> downloadFile(
+            String url,
+            Path destinationPath,
+            String expectedChecksum,
+            Consumer<DownloadProgress> progressCallback) {
+        return downloadFile(url, destinationPath, -1, expectedChecksum, progressCallback);
+    }
+
+    public CompletableFuture<Boolean> downloadFile(
+            String url,
+            Path destinationPath,
+            long expectedSize,
+            String expectedChecksum,
+            Consumer<DownloadProgress> progressCallback) {
+        return downloadFile(url, destinationPath, expectedSize, expectedChecksum, null, progressCallback);
+    }
+
+    /**
+     * @param expectedSize the file size if known from an index, or -1. Files known to fit into a
+     *                     single segment are then requested without a preceding HEAD request.
+     * @param chunks the content-defined chunks of the file from its index, or null. They become
+     *               the download segments and are verified one by one as they arrive.
+     */
     public CompletableFuture<Boolean> downloadFile(
-            String url, 
-            Path destinationPath, 
+            String url,
+            Path destinationPath,
+            long expectedSize,
             String expectedChecksum,
+            List<ModChunk> chunks,
             Consumer<DownloadProgress> progressCallback) {
-        
+
         return CompletableFuture.supplyAsync(() -> {
             try {
+                // Hashes name their algorithm with a prefix; bare hex is SHA-256
+                HashAlgorithm algorithm = HashAlgorithm.of(expectedChecksum);
+                String expectedHash = HashAlgorithm.hex(expectedChecksum);
+
                 // Create parent directories if they don't exist
                 Files.createDirectories(destinationPath.getParent());
-                
-                // Check if file already exists and is complete
-                if (Files.exists(destinationPath) && expectedChecksum != null) {
-                    String existingChecksum = calculateFileChecksum(destinationPath);
-                    if (expectedChecksum.equals(existingChecksum)) {
+
+                // Check if file already exists and is complete; a journal marks a partial file
+                if (Files.exists(destinationPath) && expectedChecksum != null
+                        && !Files.exists(DownloadJournal.pathFor(destinationPath))
+                        && (expectedSize < 0 || Files.size(destinationPath) == expectedSize)) {
+                    String existingChecksum = calculateFileChecksum(destinationPath, algorithm);
+                    if (expectedHash.equalsIgnoreCase(existingChecksum)) {
                         log.info("File already exists and checksum matches: {}", destinationPath);
                         return true;
                     }
+                    log.warn("Existing file checksum mismatch, re-downloading: {}", destinationPath);
+                    Files.delete(destinationPath);
                 }
-                
-                // Get file size from server
-                long fileSize = getFileSize(url);
+
+                // Get file size and range support from server, unless the file is too small to split
+                RemoteFile remote = expectedSize > 0 && expectedSize <= segmentSize()
+                    ? new RemoteFile(expectedSize, false)
+                    : probe(url);
+                long fileSize = remote.size();
                 if (fileSize <= 0) {
                     log.warn("Could not determine file size for: {}", url);
-                    return downloadSequential(url, destinationPath, expectedChecksum, progressCallback);
+                    limiter.acquireConnection();
+                    try {
+                        return downloadSequential(url, destinationPath, expectedChecksum, progressCallback);
+                    } finally {
+                        limiter.releaseConnection();
+                    }
                 }
-                
+
                 DownloadProgress progress = new DownloadProgress(fileSize);
-                
+                long segmentSize = segmentSize();
+                ChunkLayout layout = ChunkLayout.of(chunks, fileSize, algorithm);
+                boolean segmented = remote.acceptsRanges()
+                    && (layout != null ? layout.offsets().length > 1 : fileSize > segmentSize);
+                Path journal = DownloadJournal.pathFor(destinationPath);
+
                 // Check if partial file exists (resume capability)
                 long existingSize = 0;
-                if (Files.exists(destinationPath)) {
+                if (Files.exists(destinationPath) && (!settings.isEnableResume()
+                        || (!segmented && Files.exists(journal)))) {
+                    // A segmented partial file has holes, its length says nothing
+                    Files.delete(destinationPath);
+                    Files.deleteIfExists(journal);
+                } else if (!segmented && Files.exists(destinationPath)) {
                     existingSize = Files.size(destinationPath);
                     if (existingSize >= fileSize) {
-                        // File is complete or larger than expected, verify checksum
-                        if (expectedChecksum != null) {
-                            String actualChecksum = calculateFileChecksum(destinationPath);
-                            if (expectedChecksum.equals(actualChecksum)) {
-                                progress.getDownloadedBytes().set(fileSize);
-                                progress.setStatus("Complete");
-                                if (progressCallback != null) {
-                                    progressCallback.accept(progress);
-                                }
-                                return true;
-                            } else {
-                                log.warn("Existing file checksum mismatch, re-downloading: {}", destinationPath);
-                                Files.delete(destinationPath);
-                                existingSize = 0;
-                            }
-                        }
+                        // A complete file with the expected checksum was accepted above
+                        log.warn("Existing file cannot be resumed, re-downloading: {}", destinationPath);
+                        Files.delete(destinationPath);
+                        existingSize = 0;
                     } else {
                         progress.getDownloadedBytes().set(existingSize);
                         log.info("Resuming download from byte {}", existingSize);
                     }
                 }
-                
-                // Download remaining content
-                boolean success = downloadWithResume(url, destinationPath, existingSize, progress, progressCallback);
-                
+
+                // Download remaining content, hashing it on the way
+                boolean success;
+                String actualChecksum = null;
+                if (segmented) {
+                    if (layout == null) {
+                        layout = ChunkLayout.fixed(fileSize, segmentSize);
+                    }
+                    success = downloadSegmented(url, destinationPath, fileSize, layout, algorithm,
+                        expectedChecksum != null ? expectedChecksum : url, progress, progressCallback);
+                    if (success && layout.hashes() != null) {
+                        // Every chunk matched the index, which makes up the whole file
+                        actualChecksum = expectedHash;
+                    }
+                } else {
+                    Hasher digest = expectedChecksum != null ? algorithm.newHasher() : null;
+                    success = downloadWithFailover(url, destinationPath, existingSize, digest, progress, progressCallback);
+                    if (digest != null) {
+                        actualChecksum = HexFormat.of().formatHex(digest.digest());
+                    }
+                }
+
                 if (success && expectedChecksum != null) {
-                    progress.setStatus("Verifying checksum");
-                    if (progressCallback != null) {
-                        progressCallback.accept(progress);
+                    if (actualChecksum == null) {
+                        // Fixed segments carry no expected hashes; read the file back once
+                        progress.setStatus("Verifying checksum");
+                        if (progressCallback != null) {
+                            progressCallback.accept(progress);
+                        }
+                        actualChecksum = calculateFileChecksum(destinationPath, algorithm);
                     }
-                    
-                    String actualChecksum = calculateFileChecksum(destinationPath);
-                    if (!expectedChecksum.equals(actualChecksum)) {
-                        log.error("Checksum verification failed for {}: expected {}, got {}", 
+                    if (!expectedHash.equalsIgnoreCase(actualChecksum)) {
+                        log.error("Checksum verification failed for {}: expected {}, got {}",
                                 destinationPath, expectedChecksum, actualChecksum);
                         Files.deleteIfExists(destinationPath);
                         return false;
                     }
                 }
-                
-                progress.setStatus("Complete");
+
+                progress.setStatus(success ? "Complete" : progress.isCancelled() ? "Cancelled" : "Failed");
                 if (progressCallback != null) {
                     progressCallback.accept(progress);
                 }
-                
+
                 return success;
-                
+
             } catch (Exception e) {
                 log.error("Download failed for {}: {}", url, e.getMessage(), e);
                 return false;
             }
         });
     }
-    
-    private long getFileSize(String url) throws IOException {
-        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
-        connection.setRequestMethod("HEAD");
-        connection.connect();
-        
-        long contentLength = connection.getContentLengthLong();
-        connection.disconnect();
-        return contentLength;
+
+    private record RemoteFile(long size, boolean acceptsRanges) {
+    }
+
+    /**
+     * Start offsets of the download segments and, when taken from an index, their expected
+     * hashes.
+     */
+    private record ChunkLayout(long[] offsets, byte[][] hashes) {
+
+        static ChunkLayout fixed(long fileSize, long segmentSize) {
+            long[] offsets = new long[(int) ((fileSize + segmentSize - 1) / segmentSize)];
+            for (int i = 0; i < offsets.length; i++) {
+                offsets[i] = i * segmentSize;
+            }
+            return new ChunkLayout(offsets, null);
+        }
+
+        /**
+         * The layout of indexed chunks, or null if there are none or they do not tile the file.
+         */
+        static ChunkLayout of(List<ModChunk> chunks, long fileSize, HashAlgorithm algorithm) {
+            if (chunks == null || chunks.isEmpty()) {
+                return null;
+            }
+            long[] offsets = new long[chunks.size()];
+            byte[][] hashes = new byte[chunks.size()][];
+            long expectedOffset = 0;
+            for (int i = 0; i < offsets.length; i++) {
+                ModChunk chunk = chunks.get(i);
+                String hash = chunk.getHash();
+                int separator = hash == null ? -1 : hash.indexOf(':');
+                if (chunk.getOffset() != expectedOffset || chunk.getLength() <= 0 || hash == null
+                        || hash.length() - separator - 1 != algorithm.length() * 2
+                        || HashAlgorithm.of(hash) != algorithm) {
+                    return null;
+                }
+                try {
+                    hashes[i] = HexFormat.of().parseHex(hash, separator + 1, hash.length());
+                } catch (IllegalArgumentException e) {
+                    return null;
+                }
+                offsets[i] = expectedOffset;
+                expectedOffset += chunk.getLength();
+            }
+            return expectedOffset == fileSize ? new ChunkLayout(offsets, hashes) : null;
+        }
+    }
+
+    /**
+     * Asks for size and range support, trying the other mirrors if one does not answer.
+     */
+    private RemoteFile probe(String url) throws IOException {
+        Set<String> failedMirrors = new HashSet<>();
+        int attempts = mirrors.mirrorCount(url);
+        for (int attempt = 1; ; attempt++) {
+            MirrorMonitor.Lease lease = mirrors.acquire(url, failedMirrors);
+            try {
+                HttpRequest request = newRequest(lease.url())
+                    .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                    .build();
+                HttpResponse<Void> response = send(request, HttpResponse.BodyHandlers.discarding());
+                if (response.statusCode() != 200) {
+                    if (attempt < attempts) {
+                        failedMirrors.add(lease.base());
+                        continue;
+                    }
+                    return new RemoteFile(-1, false);
+                }
+                long contentLength = response.headers().firstValueAsLong("Content-Length").orElse(-1);
+                boolean acceptsRanges = response.headers().firstValue("Accept-Ranges")
+                    .map(value -> value.toLowerCase(Locale.ROOT).contains("bytes"))
+                    .orElse(false);
+                return new RemoteFile(contentLength, acceptsRanges);
+            } catch (IOException e) {
+                lease.failed();
+                if (attempt >= attempts || e instanceof InterruptedIOException) {
+                    throw e;
+                }
+                failedMirrors.add(lease.base());
+                log.debug("Mirror {} did not answer for {}: {}", lease.base(), url, e.getMessage());
+            } finally {
+                lease.close();
+            }
+        }
+    }
+
+    private long segmentSize() {
+        return Math.max(settings.getChunkSize(), MIN_SEGMENT_SIZE);
+    }
+
+    /**
+     * Fetches the segments missing from the journal over parallel connections. Segments the
+     * journal lists as complete are re-hashed first and fetched again if their data is damaged.
+     * On failure or cancellation the journal is saved, so the next attempt resumes.
+     */
+    private boolean downloadSegmented(
+            String url,
+            Path destinationPath,
+            long fileSize,
+            ChunkLayout layout,
+            HashAlgorithm algorithm,
+            String source,
+            DownloadProgress progress,
+            Consumer<DownloadProgress> progressCallback) throws IOException {
+
+        DownloadJournal journal = DownloadJournal.open(destinationPath, fileSize, layout.offsets(), source, algorithm);
+        int segmentCount = journal.chunkCount();
+        int workers = Math.max(1, Math.min(settings.getMaxParallelDownloads(), segmentCount));
+        AtomicInteger nextSegment = new AtomicInteger();
+        AtomicBoolean aborted = new AtomicBoolean();
+        AtomicLong lastCheckpoint = new AtomicLong(System.currentTimeMillis());
+        log.debug("Downloading {} in {} segments over {} connections", url, segmentCount, workers);
+        progress.setStatus("Downloading");
+
+        try (RandomAccessFile file = new RandomAccessFile(destinationPath.toFile(), "rw")) {
+            file.setLength(fileSize);
+            FileChannel channel = file.getChannel();
+
+            IOException failure = null;
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                List<Future<?>> results = new ArrayList<>(workers);
+                for (int i = 0; i < workers; i++) {
+                    results.add(executor.submit(() -> {
+                        int segment;
+                        while (!aborted.get() && !progress.isCancelled()
+                                && (segment = nextSegment.getAndIncrement()) < segmentCount) {
+                            try {
+                                if (journal.isComplete(segment)) {
+                                    if (journal.verify(channel, segment)) {
+                                        progress.getDownloadedBytes().addAndGet(journal.chunkLength(segment));
+                                        continue;
+                                    }
+                                    log.info("Segment at byte {} of {} is damaged, downloading it again",
+                                        journal.chunkOffset(segment), destinationPath);
+                                    journal.markMissing(segment);
+                                }
+                                byte[] expectedHash = layout.hashes() != null ? layout.hashes()[segment] : null;
+                                downloadSegment(url, channel, journal, segment, expectedHash, aborted, progress, progressCallback);
+                                if (System.currentTimeMillis() - lastCheckpoint.get() >= CHECKPOINT_INTERVAL_MS) {
+                                    lastCheckpoint.set(System.currentTimeMillis());
+                                    checkpoint(journal, channel);
+                                }
+                            } catch (IOException | RuntimeException e) {
+                                // Stop the other workers at their next segment, the download cannot complete anyway
+                                aborted.set(true);
+                                throw e;
+                            }
+                        }
+                        return null;
+                    }));
+                }
+                for (Future<?> result : results) {
+                    try {
+                        result.get();
+                    } catch (ExecutionException e) {
+                        aborted.set(true);
+                        if (failure == null) {
+                            failure = e.getCause() instanceof IOException io ? io : new IOException(e.getCause());
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        aborted.set(true);
+                        failure = new InterruptedIOException("Download of " + url + " interrupted");
+                    }
+                }
+            }
+
+            if (failure == null && !progress.isCancelled()) {
+                journal.delete();
+                return true;
+            }
+            checkpoint(journal, channel);
+            if (failure != null) {
+                throw failure;
+            }
+            progress.setStatus("Cancelled");
+            return false;
+        }
+    }
+
+    /**
+     * Persists the journal. The snapshot is taken before the data is synced, so the journal on
+     * disk never lists a segment whose bytes could still be lost.
+     */
+    private static void checkpoint(DownloadJournal journal, FileChannel channel) throws IOException {
+        byte[] snapshot = journal.snapshot();
+        channel.force(false);
+        journal.write(snapshot);
+    }
+
+    /**
+     * Fetches one segment, retrying from the last written byte if the connection breaks, and
+     * records it in the journal with the hash computed on the way. A segment that does not
+     * match its expected hash is fetched again from the start. Each retry goes to another
+     * mirror while there are mirrors that have not failed on this segment yet.
+     */
+    private void downloadSegment(
+            String url,
+            FileChannel channel,
+            DownloadJournal journal,
+            int segment,
+            byte[] expectedHash,
+            AtomicBoolean aborted,
+            DownloadProgress progress,
+            Consumer<DownloadProgress> progressCallback) throws IOException {
+
+        long start = journal.chunkOffset(segment);
+        long end = start + journal.chunkLength(segment);
+        Hasher digest = journal.newHasher();
+        long position = start;
+        Set<String> failedMirrors = new HashSet<>();
+        int attempts = Math.max(MAX_RETRIES, mirrors.mirrorCount(url) + 1);
+        for (int attempt = 1; ; attempt++) {
+            // The mirror is chosen once a connection is free, so queueing does not count against it
+            limiter.acquireConnection();
+            MirrorMonitor.Lease lease = mirrors.acquire(url, failedMirrors);
+            try {
+                AtomicLong throttled = new AtomicLong();
+                long requested = System.nanoTime();
+                long fetched = fetchRange(lease.url(), channel, position, end, digest, aborted, throttled, progress, progressCallback);
+                lease.transferred(fetched, System.nanoTime() - requested - throttled.get());
+                position += fetched;
+                if (position == end) {
+                    byte[] hash = digest.digest();
+                    if (expectedHash == null || Arrays.equals(expectedHash, hash)) {
+                        journal.markComplete(segment, hash);
+                        return;
+                    }
+                    progress.getDownloadedBytes().addAndGet(start - end);
+                    position = start;
+                    throw new IOException("Segment " + start + "-" + (end - 1) + " does not match its hash");
+                }
+                if (aborted.get() || progress.isCancelled()) {
+                    return;
+                }
+                throw new EOFException("Connection closed at byte " + position + " of segment ending at " + end);
+            } catch (IOException e) {
+                boolean stopped = aborted.get() || progress.isCancelled() || e instanceof InterruptedIOException;
+                if (!stopped) {
+                    lease.failed();
+                }
+                if (attempt >= attempts || stopped) {
+                    throw e;
+                }
+                log.debug("Segment {}-{} of {} failed (attempt {}): {}", start, end - 1, lease.url(), attempt, e.getMessage());
+                failedMirrors.add(lease.base());
+                if (failedMirrors.size() < mirrors.mirrorCount(url)) {
+                    // Another mirror takes over at the current position right away
+                    continue;
+                }
+                failedMirrors.clear();
+                try {
+                    Thread.sleep(RETRY_DELAY_MS * attempt);
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Download of " + url + " interrupted");
+                }
+            } finally {
+                lease.close();
+                limiter.releaseConnection();
+            }
+        }
+    }
+
+    /**
+     * Requests {@code [position, end)} and writes it into the channel, feeding the digest. The
+     * caller holds a connection permit; time spent in the rate limit is added to {@code throttled}.
+     * @return the number of bytes written, which is less than requested if the connection broke
+     *         or the download was stopped
+     */
+    private long fetchRange(
+            String url,
+            FileChannel channel,
+            long position,
+            long end,
+            Hasher digest,
+            AtomicBoolean aborted,
+            AtomicLong throttled,
+            DownloadProgress progress,
+            Consumer<DownloadProgress> progressCallback) throws IOException {
+
+        // HTTP/1.1 gives every segment its own TCP connection; over HTTP/2 they would share one
+        HttpRequest request = newRequest(url)
+            .version(HttpClient.Version.HTTP_1_1)
+            .header("Range", "bytes=" + position + "-" + (end - 1))
+            .GET()
+            .build();
+        FileChannelSubscriber.WriteListener progressListener = progressListener(progress, progressCallback, throttled);
+        long[] written = {0};
+        FileChannelSubscriber.WriteListener listener = data -> {
+            written[0] += data.remaining();
+            digest.update(data.duplicate());
+            return progressListener.written(data) && !aborted.get();
+        };
+
+        try {
+            HttpResponse<Long> response = send(request, info -> info.statusCode() == 206
+                ? new FileChannelSubscriber(channel, position, listener)
+                : FileChannelSubscriber.rejecting());
+            if (response.statusCode() != 206) {
+                throw new IOException("Server returned HTTP " + response.statusCode() + " for range request to " + url);
+            }
+            return response.body();
+        } catch (IOException e) {
+            if (written[0] > 0) {
+                // Keep what arrived; the digest already covers it
+                return written[0];
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Downloads the file over one connection. If the mirror fails, the next one continues after
+     * the bytes written so far.
+     */
+    private boolean downloadWithFailover(
+            String url,
+            Path destinationPath,
+            long startByte,
+            Hasher digest,
+            DownloadProgress progress,
+            Consumer<DownloadProgress> progressCallback) throws IOException {
+
+        Set<String> failedMirrors = new HashSet<>();
+        int attempts = mirrors.mirrorCount(url);
+        long position = startByte;
+        for (int attempt = 1; ; attempt++) {
+            limiter.acquireConnection();
+            MirrorMonitor.Lease lease = mirrors.acquire(url, failedMirrors);
+            try {
+                AtomicLong throttled = new AtomicLong();
+                long requested = System.nanoTime();
+                boolean success = downloadWithResume(lease.url(), destinationPath, position, digest, throttled,
+                    progress, progressCallback);
+                if (success || progress.isCancelled()) {
+                    lease.transferred(Files.size(destinationPath) - position, System.nanoTime() - requested - throttled.get());
+                    return success;
+                }
+                lease.failed();
+                if (attempt >= attempts) {
+                    return false;
+                }
+            } catch (IOException e) {
+                boolean stopped = progress.isCancelled() || e instanceof InterruptedIOException;
+                if (!stopped) {
+                    lease.failed();
+                }
+                if (attempt >= attempts || stopped) {
+                    throw e;
+                }
+                log.info("Mirror {} failed while downloading {}: {}", lease.base(), destinationPath, e.getMessage());
+            } finally {
+                lease.close();
+                limiter.releaseConnection();
+            }
+            failedMirrors.add(lease.base());
+            // Continue after what arrived; the prefix is hashed again from the file
+            position = Files.exists(destinationPath) ? Files.size(destinationPath) : 0;
+            progress.getDownloadedBytes().set(position);
+            if (digest != null) {
+                digest.reset();
+            }
+        }
     }
-    
+
+    /**
+     * Downloads the file over one connection, continuing after {@code startByte}.
+     * @param digest receives the content of the whole file if not null
+     * @param throttled receives the time spent in the rate limit
+     */
     private boolean downloadWithResume(
-            String url, 
-            Path destinationPath, 
-            long startByte, 
+            String url,
+            Path destinationPath,
+            long startByte,
+            Hasher digest,
+            AtomicLong throttled,
             DownloadProgress progress,
             Consumer<DownloadProgress> progressCallback) throws IOException {
-        
-        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
-        
+
+        HttpRequest.Builder builder = newRequest(url).GET();
         if (startByte > 0) {
-            connection.setRequestProperty("Range", "bytes=" + startByte + "-");
-        }
-        
-        connection.connect();
-        
-        int responseCode = connection.getResponseCode();
-        if (responseCode != HttpURLConnection.HTTP_OK && 
-            responseCode != HttpURLConnection.HTTP_PARTIAL) {
-            log.error("Server returned HTTP response code: {} for URL: {}", responseCode, url);
-            return false;
+            builder.header("Range", "bytes=" + startByte + "-");
         }
-        
-        try (InputStream inputStream = connection.getInputStream();
-             BufferedInputStream bufferedInput = new BufferedInputStream(inputStream);
-             FileOutputStream fileOutput = new FileOutputStream(destinationPath.toFile(), startByte > 0);
-             BufferedOutputStream bufferedOutput = new BufferedOutputStream(fileOutput)) {
-            
-            byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
-            int bytesRead;
-            
+
+        try (FileChannel channel = FileChannel.open(destinationPath, StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            if (digest != null && FileHasher.update(digest, channel, 0, startByte) < startByte) {
+                throw new IOException("Partial file " + destinationPath + " shrank while resuming");
+            }
             progress.setStatus("Downloading");
-            
-            while ((bytesRead = bufferedInput.read(buffer)) != -1) {
-                if (progress.isCancelled()) {
-                    progress.setStatus("Cancelled");
-                    return false;
+            FileChannelSubscriber.WriteListener listener = hashing(digest, progressListener(progress, progressCallback, throttled));
+            HttpResponse<Long> response = send(builder.build(), info -> {
+                if (info.statusCode() == 206) {
+                    return new FileChannelSubscriber(channel, startByte, listener);
                 }
-                
-                bufferedOutput.write(buffer, 0, bytesRead);
-                progress.getDownloadedBytes().addAndGet(bytesRead);
-                
-                if (progressCallback != null) {
-                    progressCallback.accept(progress);
+                if (info.statusCode() == 200) {
+                    // A server that ignores the range sends the whole file again
+                    progress.getDownloadedBytes().set(0);
+                    if (digest != null) {
+                        digest.reset();
+                    }
+                    return new FileChannelSubscriber(channel, 0, listener);
                 }
+                return FileChannelSubscriber.rejecting();
+            });
+
+            int responseCode = response.statusCode();
+            if (responseCode != 200 && responseCode != 206) {
+                log.error("Server returned HTTP response code: {} for URL: {}", responseCode, url);
+                return false;
+            }
+            channel.truncate((responseCode == 206 ? startByte : 0) + response.body());
+            if (progress.isCancelled()) {
+                progress.setStatus("Cancelled");
+                return false;
             }
-            
-            bufferedOutput.flush();
             return true;
-            
-        } finally {
-            connection.disconnect();
         }
     }
-    
+
     private boolean downloadSequential(
-            String url, 
-            Path destinationPath, 
+            String url,
+            Path destinationPath,
             String expectedChecksum,
             Consumer<DownloadProgress> progressCallback) throws IOException {
-        
-        HttpURLConnection connection = (HttpURLConnection) new URL(url).openConnection();
-        connection.connect();
-        
-        long fileSize = connection.getContentLengthLong();
-        DownloadProgress progress = new DownloadProgress(fileSize > 0 ? fileSize : -1);
-        
-        try (InputStream inputStream = connection.getInputStream();
-             BufferedInputStream bufferedInput = new BufferedInputStream(inputStream);
-             FileOutputStream fileOutput = new FileOutputStream(destinationPath.toFile());
-             BufferedOutputStream bufferedOutput = new BufferedOutputStream(fileOutput)) {
-            
-            byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
-            int bytesRead;
-            
-            progress.setStatus("Downloading");
-            
-            while ((bytesRead = bufferedInput.read(buffer)) != -1) {
-                if (progress.isCancelled()) {
-                    progress.setStatus("Cancelled");
-                    return false;
+
+        Hasher digest = expectedChecksum != null ? HashAlgorithm.of(expectedChecksum).newHasher() : null;
+        try (FileChannel channel = FileChannel.open(destinationPath, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            DownloadProgress[] progress = new DownloadProgress[1];
+            HttpResponse<Long> response = send(newRequest(url).GET().build(), info -> {
+                if (info.statusCode() != 200) {
+                    return FileChannelSubscriber.rejecting();
                 }
-                
-                bufferedOutput.write(buffer, 0, bytesRead);
-                progress.getDownloadedBytes().addAndGet(bytesRead);
-                
-                if (progressCallback != null) {
-                    progressCallback.accept(progress);
+                long fileSize = info.headers().firstValueAsLong("Content-Length").orElse(-1);
+                progress[0] = new DownloadProgress(fileSize > 0 ? fileSize : -1);
+                progress[0].setStatus("Downloading");
+                return new FileChannelSubscriber(channel, 0,
+                    hashing(digest, progressListener(progress[0], progressCallback, new AtomicLong())));
+            });
+            if (response.statusCode() != 200) {
+                log.error("Server returned HTTP response code: {} for URL: {}", response.statusCode(), url);
+                return false;
+            }
+            if (progress[0].isCancelled()) {
+                progress[0].setStatus("Cancelled");
+                return false;
+            }
+            if (digest != null) {
+                String actualChecksum = HexFormat.of().formatHex(digest.digest());
+                if (!HashAlgorithm.hex(expectedChecksum).equalsIgnoreCase(actualChecksum)) {
+                    log.error("Checksum verification failed for {}: expected {}, got {}",
+                            destinationPath, expectedChecksum, actualChecksum);
+                    Files.deleteIfExists(destinationPath);
+                    return false;
                 }
             }
-            
             return true;
-            
-        } finally {
-            connection.disconnect();
         }
     }
-    
-    private String calculateFileChecksum(Path filePath) {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            
-            try (InputStream inputStream = Files.newInputStream(filePath);
-                 BufferedInputStream bufferedInput = new BufferedInputStream(inputStream)) {
-                
-                byte[] buffer = new byte[DEFAULT_BUFFER_SIZE];
-                int bytesRead;
-                
-                while ((bytesRead = bufferedInput.read(buffer)) != -1) {
-                    digest.update(buffer, 0, bytesRead);
-                }
-            }
-            
-            StringBuilder result = new StringBuilder();
-            for (byte b : digest.digest()) {
-                result.append(String.format("%02x", b));
+
+    /**
+     * Feeds every written buffer to the digest, if any, before passing it on.
+     */
+    private static FileChannelSubscriber.WriteListener hashing(Hasher digest,
+                                                               FileChannelSubscriber.WriteListener next) {
+        if (digest == null) {
+            return next;
+        }
+        return data -> {
+            digest.update(data.duplicate());
+            return next.written(data);
+        };
+    }
+
+    /**
+     * Counts written bytes towards the progress, applies the rate limit and stops the transfer
+     * once the download is cancelled. Time spent in the rate limit is added to {@code throttled}.
+     */
+    private FileChannelSubscriber.WriteListener progressListener(DownloadProgress progress,
+                                                                 Consumer<DownloadProgress> progressCallback,
+                                                                 AtomicLong throttled) {
+        return data -> {
+            int bytes = data.remaining();
+            progress.getDownloadedBytes().addAndGet(bytes);
+            if (progressCallback != null) {
+                progressCallback.accept(progress);
             }
-            
-            return result.toString();
-            
-        } catch (NoSuchAlgorithmException | IOException e) {
+            throttled.addAndGet(limiter.throttle(bytes));
+            return !progress.isCancelled();
+        };
+    }
+
+    private HttpRequest.Builder newRequest(String url) {
+        return HttpRequest.newBuilder()
+            .uri(URI.create(url))
+            .timeout(Duration.ofMillis(settings.getDownloadTimeoutMs()));
+    }
+
+    private <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> handler) throws IOException {
+        try {
+            return client.send(request, handler);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Request to " + request.uri() + " interrupted");
+        }
+    }
+
+    private String calculateFileChecksum(Path filePath, HashAlgorithm algorithm) {
+        try {
+            return FileHasher.hash(filePath, algorithm);
+        } catch (IOException e) {
             log.error("Failed to calculate checksum for {}: {}", filePath, e.getMessage());
             return null;
         }
     }
-}
\ No newline at end of file
+}
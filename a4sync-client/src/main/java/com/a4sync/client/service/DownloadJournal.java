@@ -0,0 +1,230 @@
+package com.a4sync.client.service;
+
+import com.a4sync.common.sync.FileHasher;
+import com.a4sync.common.sync.HashAlgorithm;
+import com.a4sync.common.sync.Hasher;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.zip.CRC32;
+
+/**
+ * Sidecar journal of a segmented download: a bitmap of the chunks of the partial file that are
+ * complete, and the hash of every complete chunk, in the algorithm of the download. A new version is written to a temporary
+ * file, synced and renamed over the old one, so the journal on disk is always whole. A CRC over
+ * the content guards against anything else. Callers must sync the data file before saving a
+ * state that claims its chunks; on resume, complete chunks are re-hashed, so chunks lost or
+ * torn by a crash are downloaded again.
+ * <p>
+ * Layout: magic, version, file size, source, algorithm, chunk count, chunk offsets, bitmap,
+ * hashes, CRC32.
+ */
+@Slf4j
+final class DownloadJournal {
+    static final String SUFFIX = ".a4sync-journal";
+
+    private static final int MAGIC = 0x41344a4e; // "A4JN"
+    private static final int VERSION = 3;
+
+    private final Path path;
+    private final long fileSize;
+    private final long[] offsets;
+    private final String source;
+    private final HashAlgorithm algorithm;
+    private final int chunkCount;
+    private final BitSet completed;
+    private final byte[][] hashes;
+    // Held while writing to disk; separate from the state lock so chunks can land meanwhile
+    private final Object writeLock = new Object();
+
+    private DownloadJournal(Path path, long fileSize, long[] offsets, String source, HashAlgorithm algorithm,
+                            BitSet completed, byte[][] hashes) {
+        this.path = path;
+        this.fileSize = fileSize;
+        this.offsets = offsets;
+        this.source = source;
+        this.algorithm = algorithm;
+        this.chunkCount = hashes.length;
+        this.completed = completed;
+        this.hashes = hashes;
+    }
+
+    static Path pathFor(Path file) {
+        return file.resolveSibling(file.getFileName() + SUFFIX);
+    }
+
+    /**
+     * Loads the journal of {@code file}, or starts an empty one if there is none or it belongs
+     * to a different download: another size, other chunk boundaries, source or hash algorithm.
+     * @param offsets start offsets of the chunks, ascending and starting at 0
+     * @param source identifies the remote content, e.g. its expected hash
+     */
+    static DownloadJournal open(Path file, long fileSize, long[] offsets, String source, HashAlgorithm algorithm) {
+        Path path = pathFor(file);
+        if (Files.exists(path) && Files.exists(file)) {
+            DownloadJournal loaded = read(path);
+            if (loaded != null && loaded.fileSize == fileSize && Arrays.equals(loaded.offsets, offsets)
+                    && loaded.source.equals(source) && loaded.algorithm == algorithm) {
+                return loaded;
+            }
+            log.debug("Discarding journal {} of a different download", path);
+        }
+        return new DownloadJournal(path, fileSize, offsets, source, algorithm,
+            new BitSet(offsets.length), new byte[offsets.length][]);
+    }
+
+    private static DownloadJournal read(Path path) {
+        try {
+            byte[] data = Files.readAllBytes(path);
+            if (data.length < Long.BYTES) {
+                return null;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(data, 0, data.length - Long.BYTES);
+            if (crc.getValue() != ByteBuffer.wrap(data, data.length - Long.BYTES, Long.BYTES).getLong()) {
+                log.warn("Ignoring corrupt download journal {}", path);
+                return null;
+            }
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            long fileSize = in.readLong();
+            String source = in.readUTF();
+            HashAlgorithm algorithm = HashAlgorithm.forName(in.readUTF());
+            int chunkCount = in.readInt();
+            long[] offsets = new long[chunkCount];
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                offsets[chunk] = in.readLong();
+            }
+            BitSet completed = BitSet.valueOf(in.readNBytes(in.readInt()));
+            byte[][] hashes = new byte[chunkCount][];
+            for (int chunk = 0; chunk < chunkCount; chunk++) {
+                byte[] hash = in.readNBytes(algorithm.length());
+                hashes[chunk] = completed.get(chunk) ? hash : null;
+            }
+            return new DownloadJournal(path, fileSize, offsets, source, algorithm, completed, hashes);
+        } catch (IOException | IllegalArgumentException e) {
+            log.warn("Could not read download journal {}: {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    Hasher newHasher() {
+        return algorithm.newHasher();
+    }
+
+    int chunkCount() {
+        return chunkCount;
+    }
+
+    long chunkOffset(int chunk) {
+        return offsets[chunk];
+    }
+
+    long chunkLength(int chunk) {
+        return (chunk + 1 < offsets.length ? offsets[chunk + 1] : fileSize) - offsets[chunk];
+    }
+
+    synchronized boolean isComplete(int chunk) {
+        return completed.get(chunk);
+    }
+
+    synchronized byte[] hash(int chunk) {
+        return hashes[chunk];
+    }
+
+    synchronized void markComplete(int chunk, byte[] hash) {
+        completed.set(chunk);
+        hashes[chunk] = hash;
+    }
+
+    synchronized void markMissing(int chunk) {
+        completed.clear(chunk);
+        hashes[chunk] = null;
+    }
+
+    /**
+     * Serializes the current state. Take the snapshot before syncing the data file, and
+     * {@link #write} it afterwards, so the journal never claims data that is not on disk.
+     */
+    synchronized byte[] snapshot() {
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(
+                64 + chunkCount * (Long.BYTES + algorithm.length()) + chunkCount / 8);
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fileSize);
+            out.writeUTF(source);
+            out.writeUTF(algorithm.id());
+            out.writeInt(chunkCount);
+            for (long offset : offsets) {
+                out.writeLong(offset);
+            }
+            byte[] bitmap = completed.toByteArray();
+            out.writeInt(bitmap.length);
+            out.write(bitmap);
+            byte[] missing = new byte[algorithm.length()];
+            for (byte[] hash : hashes) {
+                out.write(hash != null ? hash : missing);
+            }
+            CRC32 crc = new CRC32();
+            crc.update(buffer.toByteArray());
+            out.writeLong(crc.getValue());
+            return buffer.toByteArray();
+        } catch (IOException e) {
+            throw new IllegalStateException("In-memory serialization failed", e);
+        }
+    }
+
+    /**
+     * Atomically replaces the journal on disk with a snapshot.
+     */
+    void write(byte[] snapshot) throws IOException {
+        synchronized (writeLock) {
+            Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                    StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer data = ByteBuffer.wrap(snapshot);
+                while (data.hasRemaining()) {
+                    channel.write(data);
+                }
+                channel.force(true);
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        }
+    }
+
+    void delete() throws IOException {
+        synchronized (writeLock) {
+            Files.deleteIfExists(path);
+        }
+    }
+
+    /**
+     * Whether the chunk's data in the partial file still has the hash recorded for it.
+     */
+    boolean verify(FileChannel channel, int chunk) throws IOException {
+        byte[] expected = hash(chunk);
+        if (expected == null) {
+            return false;
+        }
+        Hasher hasher = newHasher();
+        long length = chunkLength(chunk);
+        return FileHasher.update(hasher, channel, chunkOffset(chunk), chunkOffset(chunk) + length) == length
+            && Arrays.equals(expected, hasher.digest());
+    }
+}
@@ -0,0 +1,116 @@
+package com.a4sync.client.service;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+
+/**
+ * Writes a response body straight into a {@link FileChannel}, starting at a fixed position,
+ * as the buffers arrive from the HTTP client. No intermediate stream or copy buffer is
+ * involved, and several subscribers can write to different regions of the same channel.
+ * The body completes with the number of bytes written.
+ */
+final class FileChannelSubscriber implements HttpResponse.BodySubscriber<Long> {
+
+    /**
+     * Called after every written buffer with the bytes just written, which the listener may
+     * consume, e.g. for hashing. Runs on the HTTP client's thread and may block, e.g. for
+     * throttling. Returning false stops the transfer.
+     */
+    @FunctionalInterface
+    interface WriteListener {
+        boolean written(ByteBuffer data) throws IOException;
+    }
+
+    private final FileChannel channel;
+    private final long start;
+    private final WriteListener listener;
+    private final CompletableFuture<Long> result = new CompletableFuture<>();
+    private long position;
+    private Flow.Subscription subscription;
+
+    FileChannelSubscriber(FileChannel channel, long start, WriteListener listener) {
+        this.channel = channel;
+        this.start = start;
+        this.position = start;
+        this.listener = listener;
+    }
+
+    /**
+     * A subscriber that ignores the body and closes the connection right away, for responses
+     * whose status shows the body is not the expected content.
+     */
+    static HttpResponse.BodySubscriber<Long> rejecting() {
+        CompletableFuture<Long> rejected = CompletableFuture.completedFuture(-1L);
+        return new HttpResponse.BodySubscriber<>() {
+            @Override
+            public void onSubscribe(Flow.Subscription subscription) {
+                subscription.cancel();
+            }
+
+            @Override
+            public void onNext(List<ByteBuffer> item) {
+            }
+
+            @Override
+            public void onError(Throwable throwable) {
+            }
+
+            @Override
+            public void onComplete() {
+            }
+
+            @Override
+            public CompletionStage<Long> getBody() {
+                return rejected;
+            }
+        };
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        this.subscription = subscription;
+        subscription.request(1);
+    }
+
+    @Override
+    public void onNext(List<ByteBuffer> buffers) {
+        try {
+            for (ByteBuffer buffer : buffers) {
+                ByteBuffer data = buffer.duplicate();
+                while (buffer.hasRemaining()) {
+                    position += channel.write(buffer, position);
+                }
+                if (!listener.written(data)) {
+                    subscription.cancel();
+                    result.complete(position - start);
+                    return;
+                }
+            }
+            subscription.request(1);
+        } catch (IOException | RuntimeException e) {
+            subscription.cancel();
+            result.completeExceptionally(e);
+        }
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        result.completeExceptionally(throwable);
+    }
+
+    @Override
+    public void onComplete() {
+        result.complete(position - start);
+    }
+
+    @Override
+    public CompletionStage<Long> getBody() {
+        return result;
+    }
+}
@@ -0,0 +1,26 @@
+package com.a4sync.client.service;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+/**
+ * The one {@link HttpClient} of the client application. Sharing it lets every service reuse
+ * pooled keep-alive connections, and lets HTTPS repositories multiplex concurrent requests
+ * over a single HTTP/2 connection instead of paying a TCP and TLS handshake per request.
+ */
+public final class HttpClients {
+    private static final Duration CONNECT_TIMEOUT = Duration.ofSeconds(30);
+
+    private static final HttpClient SHARED = HttpClient.newBuilder()
+        .version(HttpClient.Version.HTTP_2)
+        .connectTimeout(CONNECT_TIMEOUT)
+        .followRedirects(HttpClient.Redirect.NORMAL)
+        .build();
+
+    private HttpClients() {
+    }
+
+    public static HttpClient shared() {
+        return SHARED;
+    }
+}
@@ -0,0 +1,223 @@
+package com.a4sync.client.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Scans the mod directories for local mods ({@code @} folders): size, file count, last
+ * modification and the files of each mod, gathered in a single walk per mod. All directories
+ * are scanned at once, with a few walkers per directory so several drives are read in parallel
+ * without thrashing any single one.
+ * <p>
+ * Results are reported one mod at a time as they are found. Mods whose files the client has
+ * hashed or downloaded are reported first, summed up from the {@link LocalStateStore}, so a list
+ * can be shown before the disks were read; each is reported again once it was walked.
+ */
+@Slf4j
+public class LocalLibraryScanner {
+    // Concurrent walks per mod directory; more mostly adds seeks on spinning disks
+    private static final int WALKERS_PER_DIRECTORY = 4;
+
+    private final LocalStateStore stateStore;
+
+    public LocalLibraryScanner() {
+        this(LocalStateStore.shared());
+    }
+
+    public LocalLibraryScanner(LocalStateStore stateStore) {
+        this.stateStore = stateStore;
+    }
+
+    /**
+     * A local mod. {@code files} is only known for mods that were walked in the current scan.
+     */
+    @Data
+    @AllArgsConstructor
+    public static class ScannedMod {
+        private String name;
+        private String path;
+        private long size;
+        private int fileCount;
+        private long lastModified;
+        private List<String> files;
+
+        public boolean isFromStateStore() {
+            return files == null;
+        }
+    }
+
+    /**
+     * A running scan.
+     */
+    public static final class Scan {
+        private final CompletableFuture<List<ScannedMod>> result = new CompletableFuture<>();
+        private volatile boolean cancelled;
+
+        /**
+         * Stops the scan; walks in progress end at their next folder. The result then completes
+         * with the mods scanned so far.
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Completes with all mods walked, once the scan is finished or cancelled.
+         */
+        public CompletableFuture<List<ScannedMod>> result() {
+            return result;
+        }
+    }
+
+    /**
+     * Starts scanning the given mod directories in the background.
+     * @param listener receives every mod as it is found, from several threads, first the
+     *                 mods known from the file state and then the walked ones
+     */
+    public Scan scan(List<Path> directories, Consumer<ScannedMod> listener) {
+        Scan scan = new Scan();
+        CompletableFuture.runAsync(() -> {
+            try {
+                scan.result.complete(run(List.copyOf(directories), listener, scan));
+            } catch (RuntimeException e) {
+                scan.result.completeExceptionally(e);
+            }
+        });
+        return scan;
+    }
+
+    private List<ScannedMod> run(List<Path> directories, Consumer<ScannedMod> listener, Scan scan) {
+        for (Path directory : directories) {
+            known(directory).forEach(listener);
+        }
+
+        List<ScannedMod> scanned = Collections.synchronizedList(new ArrayList<>());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (Path directory : directories) {
+                executor.submit(() -> {
+                    Queue<Path> mods = new ConcurrentLinkedQueue<>(listMods(directory));
+                    int walkerCount = Math.min(WALKERS_PER_DIRECTORY, mods.size());
+                    try (ExecutorService walkers = Executors.newVirtualThreadPerTaskExecutor()) {
+                        for (int i = 0; i < walkerCount; i++) {
+                            walkers.submit(() -> {
+                                Path modPath;
+                                while (!scan.isCancelled() && (modPath = mods.poll()) != null) {
+                                    ScannedMod mod = walkMod(modPath, scan);
+                                    if (mod != null && !scan.isCancelled()) {
+                                        scanned.add(mod);
+                                        listener.accept(mod);
+                                    }
+                                }
+                            });
+                        }
+                    }
+                });
+            }
+        }
+
+        log.debug("Scanned {} local mods in {} directories{}", scanned.size(), directories.size(),
+            scan.isCancelled() ? " before being cancelled" : "");
+        return List.copyOf(scanned);
+    }
+
+    /**
+     * Sums up the recorded files of every mod in the directory. Files the client never hashed
+     * are missing until the mod is walked.
+     */
+    private List<ScannedMod> known(Path directory) {
+        Path root = directory.toAbsolutePath().normalize();
+        Map<String, ScannedMod> mods = new TreeMap<>();
+        stateStore.below(root).forEach((file, state) -> {
+            String name = root.relativize(file).getName(0).toString();
+            if (!name.startsWith("@") || root.resolve(name).equals(file)) {
+                return;
+            }
+            ScannedMod mod = mods.computeIfAbsent(name, n ->
+                new ScannedMod(n, directory.resolve(n).toString(), 0, 0, 0, null));
+            mod.setSize(mod.getSize() + state.size());
+            mod.setFileCount(mod.getFileCount() + 1);
+            mod.setLastModified(Math.max(mod.getLastModified(), state.lastModified()));
+        });
+        return List.copyOf(mods.values());
+    }
+
+    private static List<Path> listMods(Path directory) {
+        if (!Files.isDirectory(directory)) {
+            return List.of();
+        }
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.filter(path -> path.getFileName().toString().startsWith("@"))
+                .filter(Files::isDirectory)
+                .toList();
+        } catch (IOException e) {
+            log.error("Failed to scan directory: {}", directory, e);
+            return List.of();
+        }
+    }
+
+    /**
+     * Walks one mod folder, or returns null if it could not be read or the scan was cancelled.
+     */
+    private static ScannedMod walkMod(Path modPath, Scan scan) {
+        List<String> files = new ArrayList<>();
+        long[] totals = new long[2]; // size, last modified
+        try {
+            Files.walkFileTree(modPath, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                    totals[1] = Math.max(totals[1], attrs.lastModifiedTime().toMillis());
+                    return scan.isCancelled() ? FileVisitResult.TERMINATE : FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        files.add(modPath.relativize(file).toString().replace('\\', '/'));
+                        totals[0] += attrs.size();
+                        totals[1] = Math.max(totals[1], attrs.lastModifiedTime().toMillis());
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult visitFileFailed(Path file, IOException e) {
+                    log.debug("Skipping unreadable file {}: {}", file, e.getMessage());
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Failed to scan mod: {}", modPath, e);
+            return null;
+        }
+        if (scan.isCancelled()) {
+            return null;
+        }
+        Collections.sort(files);
+        return new ScannedMod(modPath.getFileName().toString(), modPath.toString(), totals[0], files.size(),
+            totals[1], files);
+    }
+}
@@ -2,6 +2,7 @@ package com.a4sync.client.service;
 
 import com.a4sync.client.config.ClientConfig;
 import com.a4sync.common.model.Mod;
+import com.a4sync.common.sync.FileHasher;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.RequiredArgsConstructor;
 import java.io.*;
@@ -232,10 +233,8 @@ public class LocalModRepository {
                 .filter(Files::isRegularFile)
                 .forEach(file -> {
                     try {
-                        MessageDigest digest = MessageDigest.getInstance("SHA-256");
-                        byte[] hash = digest.digest(Files.readAllBytes(file));
                         String relativePath = modPath.relativize(file).toString();
-                        hashes.put(relativePath, bytesToHex(hash));
+                        hashes.put(relativePath, FileHasher.hash(file));
                     } catch (Exception e) {
                         // Skip files that can't be hashed
                     }
@@ -0,0 +1,367 @@
+package com.a4sync.client.service;
+
+import com.a4sync.common.sync.FileHasher;
+import com.a4sync.common.sync.HashAlgorithm;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32;
+
+/**
+ * Size, modification time and hash of every local mod file the client has hashed or written, for
+ * all mod directories. A file whose size and modification time still match its entry is not read
+ * again, so checking whether a mod is installed or up to date costs one directory walk.
+ * <p>
+ * The store is a log: changes are collected in memory and {@link #commit() committed} as one
+ * record, appended and synced, that carries its length and a CRC. A record torn by a crash fails
+ * the check on the next start and is dropped together with everything after it, so a commit is
+ * either fully present or absent. When the log holds much more than the live entries it is
+ * compacted into a new file that atomically replaces the old one.
+ */
+@Slf4j
+public final class LocalStateStore {
+    private static final String FILE_NAME = "local-state.log";
+    private static final int MAGIC = 0x41345354; // "A4ST"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 2 * Integer.BYTES;
+    private static final byte PUT = 0;
+    private static final byte REMOVE = 1;
+    // Compact once the log holds this many superseded entries beyond the live ones
+    private static final int COMPACT_SLACK = 10_000;
+    // Files modified this close to being read may change again within the same timestamp,
+    // covering the 2 s resolution of FAT file systems
+    private static final long RACY_WINDOW_MILLIS = 2000;
+
+    private static final LocalStateStore SHARED = new LocalStateStore(
+        Paths.get(System.getProperty("user.home"), ".a4sync", FILE_NAME));
+
+    /**
+     * State of a file when it was last hashed; the hash is formatted with its algorithm prefix.
+     */
+    public record FileState(long size, long lastModified, String hash) {
+        boolean matches(BasicFileAttributes attrs, HashAlgorithm algorithm) {
+            return size == attrs.size()
+                && lastModified == attrs.lastModifiedTime().toMillis()
+                && HashAlgorithm.of(hash) == algorithm;
+        }
+    }
+
+    private final Path logFile;
+    private final Map<String, FileState> entries = new HashMap<>();
+    // Changes since the last commit; null values are removals
+    private final Map<String, FileState> pending = new LinkedHashMap<>();
+    private long logEntries;
+    private boolean loaded;
+
+    public LocalStateStore(Path logFile) {
+        this.logFile = logFile;
+    }
+
+    /**
+     * The store of the client application under the user's home directory. Everything in the
+     * process shares it, as concurrent writers to one log would corrupt it.
+     */
+    public static LocalStateStore shared() {
+        return SHARED;
+    }
+
+    /**
+     * The recorded state of a file, or null if it has none.
+     */
+    public synchronized FileState get(Path file) {
+        load();
+        String key = keyFor(file);
+        return pending.containsKey(key) ? pending.get(key) : entries.get(key);
+    }
+
+    /**
+     * The hash of the file if it is recorded and its size, modification time and algorithm still
+     * match, or null.
+     */
+    public String cachedHash(Path file, BasicFileAttributes attrs, HashAlgorithm algorithm) {
+        FileState state = get(file);
+        return state != null && state.matches(attrs, algorithm) ? state.hash() : null;
+    }
+
+    /**
+     * The hash of the file, read from the file only if its recorded state is out of date. A new
+     * hash is recorded for the next {@link #commit()}.
+     */
+    public String hash(Path file, BasicFileAttributes attrs, HashAlgorithm algorithm) throws IOException {
+        String cached = cachedHash(file, attrs, algorithm);
+        if (cached != null) {
+            return cached;
+        }
+        long readStart = System.currentTimeMillis();
+        String hash = algorithm.format(FileHasher.hash(file, algorithm));
+        record(file, attrs, hash, readStart);
+        return hash;
+    }
+
+    /**
+     * Records the hash of a file the client just wrote and verified.
+     */
+    public void record(Path file, BasicFileAttributes attrs, String hash) {
+        record(file, attrs, hash, Long.MAX_VALUE);
+    }
+
+    /**
+     * Records a hash read from the file starting at {@code readStart}, in epoch millis. Files
+     * modified shortly before that are not recorded, as they may still be changing.
+     */
+    public synchronized void record(Path file, BasicFileAttributes attrs, String hash, long readStart) {
+        load();
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        if (lastModified > readStart - RACY_WINDOW_MILLIS) {
+            // Someone may still be writing it, and a change right after the read could keep the
+            // same timestamp; hash it again next time
+            remove(file);
+            return;
+        }
+        pending.put(keyFor(file), new FileState(attrs.size(), lastModified, hash));
+    }
+
+    public synchronized void remove(Path file) {
+        load();
+        String key = keyFor(file);
+        if (entries.containsKey(key) || pending.get(key) != null) {
+            pending.put(key, null);
+        }
+    }
+
+    /**
+     * The recorded states of all files below the given directory, including uncommitted changes.
+     */
+    public synchronized Map<Path, FileState> below(Path directory) {
+        load();
+        String prefix = keyFor(directory) + "/";
+        Map<String, FileState> states = new HashMap<>();
+        entries.forEach((key, state) -> {
+            if (key.startsWith(prefix)) {
+                states.put(key, state);
+            }
+        });
+        pending.forEach((key, state) -> {
+            if (key.startsWith(prefix)) {
+                states.put(key, state);
+            }
+        });
+        states.values().removeIf(Objects::isNull);
+        return states.entrySet().stream()
+            .collect(Collectors.toMap(entry -> Paths.get(entry.getKey()), Map.Entry::getValue));
+    }
+
+    /**
+     * Drops entries below the given directory that are not among the files just scanned.
+     */
+    public synchronized void prune(Path directory, Collection<Path> presentFiles) {
+        load();
+        String prefix = keyFor(directory) + "/";
+        Set<String> presentKeys = presentFiles.stream().map(LocalStateStore::keyFor).collect(Collectors.toSet());
+        for (String key : entries.keySet()) {
+            if (key.startsWith(prefix) && !presentKeys.contains(key)) {
+                pending.put(key, null);
+            }
+        }
+    }
+
+    /**
+     * Appends the changes recorded since the last commit as one record. If writing fails the
+     * changes stay pending for the next commit.
+     */
+    public synchronized void commit() throws IOException {
+        load();
+        pending.entrySet().removeIf(change -> change.getValue() == null && !entries.containsKey(change.getKey())
+            || change.getValue() != null && change.getValue().equals(entries.get(change.getKey())));
+        if (pending.isEmpty()) {
+            return;
+        }
+        Files.createDirectories(logFile.getParent());
+        byte[] record = encode(pending);
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            long end = channel.size();
+            if (end < HEADER_SIZE) {
+                writeFully(channel, header(), 0);
+                end = HEADER_SIZE;
+            }
+            writeFully(channel, record, end);
+            channel.force(false);
+        }
+        logEntries += pending.size();
+        apply(pending);
+        pending.clear();
+        if (logEntries > entries.size() + COMPACT_SLACK) {
+            try {
+                compact();
+            } catch (IOException e) {
+                // The log is still complete, just longer than needed
+                log.warn("Could not compact local file state {}: {}", logFile, e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Commits, logging instead of throwing; the state is a cache and can be rebuilt by hashing.
+     */
+    public void commitQuietly() {
+        try {
+            commit();
+        } catch (IOException e) {
+            log.warn("Could not save local file state to {}: {}", logFile, e.getMessage());
+        }
+    }
+
+    private void apply(Map<String, FileState> changes) {
+        for (Map.Entry<String, FileState> change : changes.entrySet()) {
+            if (change.getValue() == null) {
+                entries.remove(change.getKey());
+            } else {
+                entries.put(change.getKey(), change.getValue());
+            }
+        }
+    }
+
+    /**
+     * Rewrites the log as a single record of the live entries.
+     */
+    private void compact() throws IOException {
+        Path temp = logFile.resolveSibling(logFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeFully(channel, header(), 0);
+            writeFully(channel, encode(entries), HEADER_SIZE);
+            channel.force(true);
+        }
+        Files.move(temp, logFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        logEntries = entries.size();
+        log.debug("Compacted local file state {} to {} entries", logFile, entries.size());
+    }
+
+    private void load() {
+        if (loaded) {
+            return;
+        }
+        loaded = true;
+        if (!Files.exists(logFile)) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(logFile, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            byte[] data = new byte[Math.toIntExact(channel.size())];
+            ByteBuffer buffer = ByteBuffer.wrap(data);
+            while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                // Fill the buffer
+            }
+            ByteBuffer in = ByteBuffer.wrap(data);
+            if (data.length < HEADER_SIZE || in.getInt() != MAGIC || in.getInt() != VERSION) {
+                log.warn("Ignoring unreadable local file state {}, files will be re-hashed", logFile);
+                channel.truncate(0);
+                return;
+            }
+            while (in.remaining() >= Integer.BYTES) {
+                int start = in.position();
+                int length = in.getInt();
+                if (length < 0 || in.remaining() < length + Long.BYTES
+                        || crc(data, in.position(), length) != in.getLong(in.position() + length)) {
+                    in.position(start);
+                    break;
+                }
+                decode(data, in.position(), length);
+                in.position(in.position() + length + Long.BYTES);
+            }
+            if (in.hasRemaining()) {
+                // The tail of an interrupted commit; cut it off so new records follow valid ones
+                log.warn("Dropping {} bytes of incomplete changes from {}", in.remaining(), logFile);
+                channel.truncate(in.position());
+            }
+            log.debug("Loaded {} entries from local file state {}", entries.size(), logFile);
+        } catch (IOException | ArithmeticException e) {
+            log.warn("Could not read local file state {}: {}", logFile, e.getMessage());
+            entries.clear();
+            logEntries = 0;
+        }
+    }
+
+    private void decode(byte[] data, int offset, int length) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data, offset, length));
+        int count = in.readInt();
+        for (int i = 0; i < count; i++) {
+            byte op = in.readByte();
+            String key = in.readUTF();
+            if (op == REMOVE) {
+                entries.remove(key);
+            } else if (op == PUT) {
+                entries.put(key, new FileState(in.readLong(), in.readLong(), in.readUTF()));
+            } else {
+                throw new EOFException("Unknown operation " + op);
+            }
+        }
+        logEntries += count;
+    }
+
+    private static byte[] encode(Map<String, FileState> changes) {
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(64 + changes.size() * 160);
+            DataOutputStream out = new DataOutputStream(buffer);
+            out.writeInt(0); // length, filled in below
+            out.writeInt(changes.size());
+            for (Map.Entry<String, FileState> change : changes.entrySet()) {
+                FileState state = change.getValue();
+                out.writeByte(state == null ? REMOVE : PUT);
+                out.writeUTF(change.getKey());
+                if (state != null) {
+                    out.writeLong(state.size());
+                    out.writeLong(state.lastModified());
+                    out.writeUTF(state.hash());
+                }
+            }
+            out.writeLong(0); // CRC, filled in below
+            byte[] record = buffer.toByteArray();
+            int length = record.length - Integer.BYTES - Long.BYTES;
+            ByteBuffer.wrap(record).putInt(0, length).putLong(Integer.BYTES + length, crc(record, Integer.BYTES, length));
+            return record;
+        } catch (IOException e) {
+            throw new IllegalStateException("In-memory serialization failed", e);
+        }
+    }
+
+    private static long crc(byte[] data, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(data, offset, length);
+        return crc.getValue();
+    }
+
+    private static byte[] header() {
+        return ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).array();
+    }
+
+    private static void writeFully(FileChannel channel, byte[] data, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(data);
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static String keyFor(Path file) {
+        return file.toAbsolutePath().normalize().toString().replace('\\', '/');
+    }
+}
@@ -0,0 +1,91 @@
+package com.a4sync.client.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.github.luben.zstd.ZstdInputStream;
+import com.github.luben.zstd.util.Native;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Reads catalog and manifest responses in the most compact form the repository offers.
+ * Requests ask for Smile, Jackson's binary JSON, falling back to JSON for servers without it,
+ * and for zstd or gzip compression. Responses are decompressed and parsed while they stream
+ * in, straight into the model objects, so neither the raw body nor a JSON tree is held in
+ * memory.
+ */
+@Slf4j
+public final class ManifestCodec {
+    private static final String SMILE_TYPE = "application/x-jackson-smile";
+    private static final String ACCEPT = SMILE_TYPE + ", application/json;q=0.9";
+    private static final int GZIP_BUFFER_SIZE = 8192;
+    private static final boolean ZSTD_AVAILABLE = zstdAvailable();
+    private static final String ACCEPT_ENCODING = ZSTD_AVAILABLE ? "zstd, gzip" : "gzip";
+
+    private final ObjectMapper jsonMapper;
+    private final ObjectMapper smileMapper;
+
+    /**
+     * @param jsonMapper the configured mapper of the caller; the Smile mapper gets the same
+     *                   modules and settings
+     */
+    public ManifestCodec(ObjectMapper jsonMapper) {
+        this.jsonMapper = jsonMapper;
+        this.smileMapper = jsonMapper.copyWith(new SmileFactory());
+    }
+
+    /**
+     * Adds the Accept and Accept-Encoding headers of a manifest request.
+     */
+    public HttpRequest.Builder negotiate(HttpRequest.Builder builder) {
+        return builder
+            .setHeader("Accept", ACCEPT)
+            .setHeader("Accept-Encoding", ACCEPT_ENCODING);
+    }
+
+    /**
+     * Parses the body of a successful response, in whatever format and encoding the server
+     * chose, and closes it.
+     */
+    public <T> T read(HttpResponse<InputStream> response, Class<T> type) throws IOException {
+        String contentType = response.headers().firstValue("Content-Type").orElse("")
+            .toLowerCase(Locale.ROOT);
+        ObjectMapper mapper = contentType.startsWith(SMILE_TYPE) ? smileMapper : jsonMapper;
+        try (InputStream body = decode(response)) {
+            return mapper.readValue(body, type);
+        }
+    }
+
+    private static InputStream decode(HttpResponse<InputStream> response) throws IOException {
+        InputStream body = response.body();
+        String encoding = response.headers().firstValue("Content-Encoding").orElse("identity")
+            .trim().toLowerCase(Locale.ROOT);
+        try {
+            return switch (encoding) {
+                case "identity" -> body;
+                case "gzip", "x-gzip" -> new GZIPInputStream(body, GZIP_BUFFER_SIZE);
+                case "zstd" -> new ZstdInputStream(body);
+                default -> throw new IOException("Unsupported content encoding " + encoding + " from " + response.uri());
+            };
+        } catch (IOException e) {
+            body.close();
+            throw e;
+        }
+    }
+
+    private static boolean zstdAvailable() {
+        try {
+            Native.load();
+            return true;
+        } catch (UnsatisfiedLinkError | RuntimeException e) {
+            log.debug("zstd is not available on this platform, asking for gzip only: {}", e.getMessage());
+            return false;
+        }
+    }
+}
@@ -0,0 +1,295 @@
+package com.a4sync.client.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Rolling statistics of repository mirrors, used to decide where each download request goes.
+ * A repository URL and its mirror URLs form a group, and any URL below one member can be
+ * moved to another member by swapping the base. Every mirror tracks the latency of its health
+ * probes, the throughput of its recent transfers, its transfers in flight and its consecutive
+ * failures. A mirror that keeps failing is skipped for a back-off that grows with each failure.
+ * <p>
+ * A request goes to the available mirror with the best expected throughput per transfer: its
+ * measured rate divided by the transfers it already serves. The parallel segments of one file
+ * therefore spread over all mirrors and add up their bandwidth. Mirrors that were never
+ * measured are assumed to be as fast as the best one, so they get tried. While any group has
+ * mirrors, a background thread probes their health endpoints, so a mirror that came back is
+ * used again. URLs of repositories without mirrors are used as they are.
+ */
+@Slf4j
+public final class MirrorMonitor {
+    private static final Duration PROBE_INTERVAL = Duration.ofSeconds(30);
+    private static final Duration PROBE_TIMEOUT = Duration.ofSeconds(5);
+    private static final long MIN_BACKOFF_MS = 5_000;
+    private static final long MAX_BACKOFF_MS = 5 * 60_000;
+    // Weight of the newest sample in the rolling averages
+    private static final double SMOOTHING = 0.3;
+    // Smaller transfers mostly measure the request round trip
+    private static final long MIN_SAMPLE_BYTES = 64 * 1024;
+
+    private static final MirrorMonitor SHARED = new MirrorMonitor();
+
+    // Every member's base URL maps to the group it belongs to, primary first
+    private final Map<String, List<Mirror>> groups = new ConcurrentHashMap<>();
+    private final Map<String, Mirror> mirrors = new ConcurrentHashMap<>();
+    private ScheduledExecutorService prober;
+
+    /**
+     * The monitor of the client application, so all downloads share what was learned about
+     * each mirror.
+     */
+    public static MirrorMonitor shared() {
+        return SHARED;
+    }
+
+    /**
+     * Defines the mirrors of a repository, replacing those registered before. Statistics of
+     * mirrors that were already known are kept.
+     */
+    public synchronized void register(String repositoryUrl, Collection<String> mirrorUrls) {
+        List<String> bases = new ArrayList<>();
+        bases.add(normalize(repositoryUrl));
+        if (mirrorUrls != null) {
+            for (String mirrorUrl : mirrorUrls) {
+                if (mirrorUrl != null && !mirrorUrl.isBlank() && !bases.contains(normalize(mirrorUrl))) {
+                    bases.add(normalize(mirrorUrl));
+                }
+            }
+        }
+        List<Mirror> previous = groups.get(bases.get(0));
+        if (previous != null) {
+            previous.forEach(mirror -> groups.remove(mirror.base));
+        }
+        if (bases.size() == 1) {
+            return;
+        }
+        List<Mirror> group = bases.stream()
+            .map(base -> mirrors.computeIfAbsent(base, Mirror::new))
+            .toList();
+        group.forEach(mirror -> groups.put(mirror.base, group));
+        log.info("Repository {} has {} mirrors", bases.get(0), bases.size() - 1);
+        if (prober == null) {
+            prober = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().daemon().name("mirror-monitor").factory());
+            prober.scheduleWithFixedDelay(this::probeAll, 0, PROBE_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * How many places serve the given URL: 1 plus the number of mirrors of its repository.
+     */
+    public int mirrorCount(String url) {
+        Map.Entry<String, List<Mirror>> group = groupOf(url);
+        return group == null ? 1 : group.getValue().size();
+    }
+
+    /**
+     * Picks the mirror for a request. Mirrors whose base URL is in {@code avoid} are only used
+     * when nothing else is left. The lease must be closed once the request is finished.
+     */
+    public Lease acquire(String url, Set<String> avoid) {
+        Map.Entry<String, List<Mirror>> group = groupOf(url);
+        if (group == null) {
+            return new Lease(url, null, null);
+        }
+        Mirror chosen = select(group.getValue(), avoid);
+        chosen.active.incrementAndGet();
+        return new Lease(chosen.base + url.substring(group.getKey().length()), chosen.base, chosen);
+    }
+
+    private static Mirror select(List<Mirror> group, Set<String> avoid) {
+        long now = System.currentTimeMillis();
+        double fastest = group.stream().mapToDouble(Mirror::throughput).max().orElse(0);
+        Mirror best = null;
+        double bestScore = -1;
+        for (Mirror mirror : group) {
+            if (avoid.contains(mirror.base) || mirror.backedOffUntil() > now) {
+                continue;
+            }
+            double rate = mirror.throughput() > 0 ? mirror.throughput() : Math.max(fastest, 1);
+            double score = rate / (mirror.active.get() + 1);
+            if (score > bestScore || score == bestScore && mirror.latency() < best.latency()) {
+                best = mirror;
+                bestScore = score;
+            }
+        }
+        if (best != null) {
+            return best;
+        }
+        // Everything failed recently; prefer mirrors not tried yet, then the one due first
+        return group.stream()
+            .min(Comparator.comparing((Mirror mirror) -> avoid.contains(mirror.base))
+                .thenComparingLong(Mirror::backedOffUntil))
+            .orElseThrow();
+    }
+
+    private Map.Entry<String, List<Mirror>> groupOf(String url) {
+        if (groups.isEmpty()) {
+            return null;
+        }
+        for (Map.Entry<String, List<Mirror>> group : groups.entrySet()) {
+            String base = group.getKey();
+            if (url.startsWith(base) && (url.length() == base.length() || url.charAt(base.length()) == '/')) {
+                return group;
+            }
+        }
+        return null;
+    }
+
+    private void probeAll() {
+        Set<Mirror> probed = new HashSet<>();
+        for (List<Mirror> group : groups.values()) {
+            probed.addAll(group);
+        }
+        for (Mirror mirror : probed) {
+            HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(mirror.base + "/api/v1/health"))
+                .timeout(PROBE_TIMEOUT)
+                .GET()
+                .build();
+            long start = System.nanoTime();
+            HttpClients.shared().sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .orTimeout(PROBE_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)
+                .whenComplete((response, throwable) -> {
+                    if (throwable == null && response.statusCode() == 200) {
+                        mirror.probeSucceeded((System.nanoTime() - start) / 1_000_000.0);
+                    } else {
+                        log.debug("Mirror {} failed its health check: {}", mirror.base,
+                            throwable != null ? throwable.getMessage() : "HTTP " + response.statusCode());
+                        // Requests would most likely fail as well; wait for the next probe
+                        mirror.failed(PROBE_INTERVAL.toMillis());
+                    }
+                });
+        }
+    }
+
+    private static String normalize(String url) {
+        return url.replaceAll("/+$", "");
+    }
+
+    /**
+     * One request to a mirror. Report its transfer or failure, then close it; a lease closed
+     * without a failure counts as a success.
+     */
+    public static final class Lease implements AutoCloseable {
+        private final String url;
+        private final String base;
+        private final Mirror mirror;
+        private boolean failed;
+        private boolean closed;
+
+        private Lease(String url, String base, Mirror mirror) {
+            this.url = url;
+            this.base = base;
+            this.mirror = mirror;
+        }
+
+        /**
+         * The requested URL on the chosen mirror.
+         */
+        public String url() {
+            return url;
+        }
+
+        /**
+         * Base URL of the chosen mirror, or null if the repository has no mirrors.
+         */
+        public String base() {
+            return base;
+        }
+
+        public void transferred(long bytes, long nanos) {
+            if (mirror != null) {
+                mirror.transferred(bytes, nanos);
+            }
+        }
+
+        public void failed() {
+            if (mirror != null && !failed) {
+                failed = true;
+                mirror.failed(0);
+            }
+        }
+
+        @Override
+        public void close() {
+            if (mirror != null && !closed) {
+                closed = true;
+                mirror.active.decrementAndGet();
+                if (!failed) {
+                    mirror.recovered();
+                }
+            }
+        }
+    }
+
+    private static final class Mirror {
+        private final String base;
+        private final AtomicInteger active = new AtomicInteger();
+        // Bytes per second of a single transfer, 0 until measured
+        private double throughput;
+        // Milliseconds, infinite until measured
+        private double latency = Double.POSITIVE_INFINITY;
+        private int failures;
+        private long backedOffUntil;
+
+        private Mirror(String base) {
+            this.base = base;
+        }
+
+        synchronized double throughput() {
+            return throughput;
+        }
+
+        synchronized double latency() {
+            return latency;
+        }
+
+        synchronized long backedOffUntil() {
+            return backedOffUntil;
+        }
+
+        synchronized void transferred(long bytes, long nanos) {
+            if (bytes >= MIN_SAMPLE_BYTES && nanos > 0) {
+                double rate = bytes * 1e9 / nanos;
+                throughput = throughput == 0 ? rate : throughput + SMOOTHING * (rate - throughput);
+            }
+        }
+
+        synchronized void probeSucceeded(double millis) {
+            latency = Double.isInfinite(latency) ? millis : latency + SMOOTHING * (millis - latency);
+            recovered();
+        }
+
+        synchronized void failed(long minBackoff) {
+            failures++;
+            long backoff = Math.min(MAX_BACKOFF_MS, MIN_BACKOFF_MS << Math.min(failures - 1, 16));
+            backedOffUntil = System.currentTimeMillis() + Math.max(backoff, minBackoff);
+        }
+
+        synchronized void recovered() {
+            if (failures > 0) {
+                log.info("Mirror {} is available again", base);
+            }
+            failures = 0;
+            backedOffUntil = 0;
+        }
+    }
+}
@@ -3,26 +3,48 @@ package com.a4sync.client.service;
 import com.a4sync.client.model.DownloadProgress;
 import com.a4sync.common.model.Mod;
 import com.a4sync.client.config.ClientConfig;
+import com.a4sync.common.sync.FileHasher;
+import com.a4sync.common.sync.HashAlgorithm;
+import com.a4sync.common.sync.ModTree;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
 import java.io.IOException;
 import java.net.URI;
 import java.nio.file.*;
-import java.security.MessageDigest;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.CompletableFuture;
 import java.util.function.Consumer;
 
 @Slf4j
 public class ModManager {
     private final ClientConfig config;
-    private final ChunkedDownloadService downloadService;
+    private final ModSyncService syncService;
+    private final LocalStateStore stateStore;
     
     public ModManager(ClientConfig config) {
+        this(config, LocalStateStore.shared());
+    }
+    
+    public ModManager(ClientConfig config, LocalStateStore stateStore) {
         this.config = config;
-        this.downloadService = new ChunkedDownloadService();
+        this.stateStore = stateStore;
+        // One budget for all transfers, however many mods are downloaded at once
+        TransferLimiter limiter = new TransferLimiter(config.getDownloadSettings());
+        this.syncService = new ModSyncService(
+            new ChunkedDownloadService(config.getDownloadSettings(), limiter),
+            new RangeRequestClient(limiter),
+            stateStore);
     }
     
+    /**
+     * Whether a mod directory holds the mod with the given hash. Files whose size and modification
+     * time match the local state store are not read, so this is a directory walk for mods that
+     * did not change since they were last hashed or synchronized.
+     */
     public boolean isModInstalled(Mod mod) {
         for (Path directory : config.getModDirectories()) {
             Path modPath = directory.resolve(mod.getName());
@@ -33,41 +55,42 @@ public class ModManager {
         return false;
     }
     
+    /**
+     * Whether any mod directory has a folder for the mod, installed or outdated.
+     */
+    public boolean isModPresent(Mod mod) {
+        return findInstalledModPath(mod.getName()).isPresent();
+    }
+    
     public CompletableFuture<Void> downloadMod(Mod mod, String modSetName, String repositoryUrl) {
         return downloadMod(mod, modSetName, repositoryUrl, null);
     }
     
     public CompletableFuture<Void> downloadMod(Mod mod, String modSetName, String repositoryUrl, 
             Consumer<DownloadProgress> progressCallback) {
-        Path targetDir = selectTargetDirectory(mod);
-        Path targetPath = targetDir.resolve(mod.getName());
+        // Update an existing copy in place so only changed files are transferred
+        Path targetPath = findInstalledModPath(mod.getName())
+            .orElseGet(() -> selectTargetDirectory(mod).resolve(mod.getName()));
+        log.info("Synchronizing mod {} to {}", mod.getName(), targetPath);
         
-        String downloadUrl = repositoryUrl + "/api/v1/modsets/" + modSetName + "/mods/" + mod.getName();
-        log.info("Downloading mod {} to {}", mod.getName(), targetPath);
-        
-        return downloadService.downloadFile(downloadUrl, targetPath, mod.getHash(), progressCallback)
-            .thenCompose(success -> {
-                if (!success) {
-                    return CompletableFuture.failedFuture(
-                        new RuntimeException("Failed to download mod: " + mod.getName()));
-                }
-                
-                // Additional verification using our existing method
-                if (mod.getHash() != null && !verifyModHash(targetPath, mod.getHash())) {
-                    try {
-                        Files.deleteIfExists(targetPath);
-                    } catch (IOException e) {
-                        log.warn("Failed to delete invalid mod file: {}", targetPath, e);
-                    }
-                    return CompletableFuture.failedFuture(
-                        new IOException("Downloaded mod failed hash verification: " + mod.getName()));
+        return syncService.syncMod(repositoryUrl, modSetName, mod.getName(), targetPath, progressCallback)
+            .thenAccept(plan -> {
+                if (plan.isUpToDate()) {
+                    log.info("Mod {} is already up to date", mod.getName());
+                } else {
+                    log.info("Successfully synchronized mod {}: {} files downloaded, {} rebuilt from local content, {} removed",
+                        mod.getName(), plan.getDownloads().size(), plan.getDeltas().size(), plan.getDeletions().size());
                 }
-                
-                log.info("Successfully downloaded and verified mod: {}", mod.getName());
-                return CompletableFuture.completedFuture(null);
             });
     }
     
+    private Optional<Path> findInstalledModPath(String modName) {
+        return config.getModDirectories().stream()
+            .map(directory -> directory.resolve(modName))
+            .filter(Files::isDirectory)
+            .findFirst();
+    }
+    
     private Path selectTargetDirectory(Mod mod) {
         // Select the first available directory with enough space
         for (Path directory : config.getModDirectories()) {
@@ -86,10 +109,33 @@ public class ModManager {
     
     private boolean verifyModHash(Path modPath, String expectedHash) {
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(Files.readAllBytes(modPath));
-            String actualHash = bytesToHex(hash);
-            return actualHash.equalsIgnoreCase(expectedHash);
+            // The prefix of the mod hash names the algorithm of its file hashes as well
+            HashAlgorithm algorithm = HashAlgorithm.of(expectedHash);
+            if (!Files.isDirectory(modPath)) {
+                return FileHasher.hash(modPath, algorithm).equalsIgnoreCase(HashAlgorithm.hex(expectedHash));
+            }
+            // Same Merkle tree as the server: content hash of every file by relative path
+            Map<Path, BasicFileAttributes> files = new HashMap<>();
+            Files.walkFileTree(modPath, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        files.put(file, attrs);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+            ModTree tree = new ModTree(algorithm);
+            try {
+                for (Map.Entry<Path, BasicFileAttributes> file : files.entrySet()) {
+                    tree.add(modPath.relativize(file.getKey()).toString().replace('\\', '/'),
+                        stateStore.hash(file.getKey(), file.getValue(), algorithm));
+                }
+                stateStore.prune(modPath, files.keySet());
+            } finally {
+                stateStore.commitQuietly();
+            }
+            return bytesToHex(tree.root()).equalsIgnoreCase(HashAlgorithm.hex(expectedHash));
         } catch (Exception e) {
             return false;
         }
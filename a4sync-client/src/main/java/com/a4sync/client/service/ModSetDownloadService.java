@@ -8,100 +8,124 @@ import com.a4sync.client.config.ClientConfig;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.Comparator;
+import java.util.Deque;
 import java.util.List;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.function.Consumer;
 
 /**
- * Service for downloading complete mod set catalogues with progress tracking
+ * Service for downloading complete mod set catalogues with progress tracking.
+ * Up to {@code maxConcurrentMods} mods are synchronized at once. Most workers take the largest
+ * remaining mod, one takes the smallest, so small mods are packed alongside the large ones
+ * instead of queueing behind them. Connections and bandwidth are capped globally by the
+ * {@link TransferLimiter} of the {@link ModManager}.
  */
 @Slf4j
 @RequiredArgsConstructor
 public class ModSetDownloadService {
-    
+
     private final ModManager modManager;
     private final ClientConfig config;
-    
 
-    
     /**
      * Downloads an entire mod set's catalogue of mods
      * @param modSet The mod set to download
      * @param repositoryUrl The repository URL
-     * @param progressCallback Optional progress callback
+     * @param progressCallback Optional progress callback, may be invoked from several threads
      * @return CompletableFuture that completes when all downloads finish
      */
     public CompletableFuture<DownloadResult> downloadModSet(
-            ModSet modSet, 
+            ModSet modSet,
             String repositoryUrl,
             Consumer<ModSetDownloadProgress> progressCallback) {
-        
+
         List<Mod> modsToDownload = modSet.getMods();
         if (modsToDownload == null || modsToDownload.isEmpty()) {
             return CompletableFuture.completedFuture(new DownloadResult(0, 0, 0));
         }
-        
+
         ModSetDownloadProgress progress = new ModSetDownloadProgress(modsToDownload.size());
-        
+
         return CompletableFuture.supplyAsync(() -> {
             log.info("Starting download of mod set '{}' with {} mods", modSet.getName(), modsToDownload.size());
-            
-            for (Mod mod : modsToDownload) {
-                if (progress.isCancelled()) {
-                    log.info("Download cancelled for mod set '{}'", modSet.getName());
-                    break;
-                }
-                
-                // Skip already installed mods
-                if (modManager.isModInstalled(mod)) {
-                    log.debug("Mod '{}' already installed, skipping", mod.getName());
-                    progress.incrementCompleted();
-                    if (progressCallback != null) {
-                        progressCallback.accept(progress);
-                    }
-                    continue;
-                }
-                
-                progress.setCurrentMod(mod.getName());
-                progress.setCurrentModProgress(0.0);
-                
-                if (progressCallback != null) {
-                    progressCallback.accept(progress);
-                }
-                
-                try {
-                    // Download individual mod with progress tracking
-                    modManager.downloadMod(mod, modSet.getName(), repositoryUrl, 
-                        modProgress -> {
-                            progress.setCurrentModProgress(modProgress.getProgressPercentage() / 100.0);
-                            if (progressCallback != null) {
-                                progressCallback.accept(progress);
-                            }
-                        }).get(); // Block until this mod completes
-                    
-                    progress.incrementCompleted();
-                    log.info("Successfully downloaded mod: {}", mod.getName());
-                    
-                } catch (Exception e) {
-                    progress.incrementFailed();
-                    log.error("Failed to download mod '{}': {}", mod.getName(), e.getMessage(), e);
-                }
-                
-                if (progressCallback != null) {
-                    progressCallback.accept(progress);
+
+            // Largest first at the head, smallest at the tail
+            Deque<Mod> queue = new ConcurrentLinkedDeque<>(modsToDownload.stream()
+                .sorted(Comparator.comparingLong(Mod::getSize).reversed())
+                .toList());
+            int workers = Math.max(1, Math.min(config.getDownloadSettings().getMaxConcurrentMods(), modsToDownload.size()));
+
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                for (int i = 0; i < workers; i++) {
+                    boolean smallestFirst = i == workers - 1;
+                    executor.submit(() -> {
+                        Mod mod;
+                        while (!progress.isCancelled()
+                                && (mod = smallestFirst ? queue.pollLast() : queue.pollFirst()) != null) {
+                            downloadMod(mod, modSet, repositoryUrl, progress, progressCallback);
+                        }
+                    });
                 }
             }
-            
+
+            if (progress.isCancelled()) {
+                log.info("Download cancelled for mod set '{}'", modSet.getName());
+            }
+
             int successful = progress.getCompletedMods();
             int failed = progress.getFailedMods();
             int skipped = modsToDownload.size() - successful - failed;
-            
-            log.info("Mod set '{}' download completed: {} successful, {} failed, {} skipped", 
+
+            log.info("Mod set '{}' download completed: {} successful, {} failed, {} skipped",
                     modSet.getName(), successful, failed, skipped);
-            
+
             return new DownloadResult(successful, failed, skipped);
         });
     }
-    
 
-}
\ No newline at end of file
+    private void downloadMod(Mod mod, ModSet modSet, String repositoryUrl, ModSetDownloadProgress progress,
+                             Consumer<ModSetDownloadProgress> progressCallback) {
+        // Skip already installed mods
+        if (modManager.isModInstalled(mod)) {
+            log.debug("Mod '{}' already installed, skipping", mod.getName());
+            progress.incrementCompleted();
+            notify(progress, progressCallback);
+            return;
+        }
+
+        progress.startMod(mod.getName());
+        notify(progress, progressCallback);
+
+        try {
+            modManager.downloadMod(mod, modSet.getName(), repositoryUrl,
+                modProgress -> {
+                    if (progress.isCancelled()) {
+                        modProgress.setCancelled(true);
+                    }
+                    progress.updateMod(mod.getName(), modProgress.getDownloadedBytes().get(), modProgress.getTotalBytes());
+                    notify(progress, progressCallback);
+                }).join();
+
+            progress.finishMod(mod.getName());
+            progress.incrementCompleted();
+            log.info("Successfully downloaded mod: {}", mod.getName());
+
+        } catch (Exception e) {
+            progress.finishMod(mod.getName());
+            progress.incrementFailed();
+            log.error("Failed to download mod '{}': {}", mod.getName(), e.getMessage(), e);
+        }
+
+        notify(progress, progressCallback);
+    }
+
+    private static void notify(ModSetDownloadProgress progress, Consumer<ModSetDownloadProgress> progressCallback) {
+        if (progressCallback != null) {
+            progressCallback.accept(progress);
+        }
+    }
+}
@@ -0,0 +1,618 @@
+package com.a4sync.client.service;
+
+import com.a4sync.client.model.DownloadProgress;
+import com.a4sync.client.model.SyncPlan;
+import com.a4sync.common.model.FileSignature;
+import com.a4sync.common.model.ModChunk;
+import com.a4sync.common.model.ModFile;
+import com.a4sync.common.model.ModFolder;
+import com.a4sync.common.model.ModIndex;
+import com.a4sync.common.sync.BlockMatcher;
+import com.a4sync.common.sync.FastCdc;
+import com.a4sync.common.sync.FileHasher;
+import com.a4sync.common.sync.HashAlgorithm;
+import com.a4sync.common.sync.ModTree;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Delta synchronisation of a single mod folder against the repository's mod tree, or its mod
+ * index where the repository does not list trees. Only missing or changed files are transferred. For changed files whose index lists
+ * content-defined chunks, the local copy is chunked the same way and only chunks whose hash is
+ * not found locally are fetched, in multi-range requests. Larger changed files without chunk
+ * hashes are matched rsync-style against the server's block signatures instead. Either way,
+ * content that merely shifted is reused. Files no longer listed in the index are removed.
+ */
+@Slf4j
+public class ModSyncService {
+    static final String PART_SUFFIX = ".a4sync-part";
+    static final String DELTA_SUFFIX = ".a4sync-delta";
+    // Below this size fetching block signatures costs about as much as the file itself
+    private static final long DELTA_MIN_SIZE = 1024 * 1024;
+    private static final int BUFFER_SIZE = 64 * 1024;
+    // Above this share of changed bytes a whole-file download is cheaper than a delta
+    private static final double PATCH_THRESHOLD = 0.75;
+
+    private final HttpClient client;
+    private final ManifestCodec manifestCodec;
+    private final RangeRequestClient rangeClient;
+    private final ChunkedDownloadService downloadService;
+    private final LocalStateStore stateStore;
+
+    public ModSyncService() {
+        this(new ChunkedDownloadService());
+    }
+
+    public ModSyncService(ChunkedDownloadService downloadService) {
+        this(downloadService, new RangeRequestClient());
+    }
+
+    public ModSyncService(ChunkedDownloadService downloadService, RangeRequestClient rangeClient) {
+        this(downloadService, rangeClient, LocalStateStore.shared());
+    }
+
+    public ModSyncService(ChunkedDownloadService downloadService, RangeRequestClient rangeClient,
+                          LocalStateStore stateStore) {
+        this.client = HttpClients.shared();
+        ObjectMapper objectMapper = new ObjectMapper();
+        objectMapper.findAndRegisterModules();
+        this.manifestCodec = new ManifestCodec(objectMapper);
+        this.rangeClient = rangeClient;
+        this.downloadService = downloadService;
+        this.stateStore = stateStore;
+    }
+
+    /**
+     * Brings {@code localModDir} in line with the remote index of the mod.
+     * @return the plan that was executed
+     */
+    public CompletableFuture<SyncPlan> syncMod(String repositoryUrl, String modSetName, String modName,
+                                               Path localModDir, Consumer<DownloadProgress> progressCallback) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                String modUrl = modUrl(repositoryUrl, modSetName, modName);
+                SyncPlan plan = planByTree(modUrl, localModDir);
+                if (plan == null) {
+                    // Repositories without tree listings only offer the whole index
+                    plan = planSync(fetchModIndex(modUrl), modUrl, localModDir);
+                }
+                log.info("Sync plan for {}: {} downloads, {} deltas, {} deletions, {} unchanged ({} bytes to transfer)",
+                    modName, plan.getDownloads().size(), plan.getDeltas().size(),
+                    plan.getDeletions().size(), plan.getUnchangedFiles(), plan.getBytesToTransfer());
+                applyPlan(plan, modUrl, localModDir, progressCallback);
+                return plan;
+            } catch (IOException e) {
+                throw new CompletionException(e);
+            } finally {
+                // Whatever was hashed or written before a failure stays known
+                stateStore.commitQuietly();
+            }
+        });
+    }
+
+    /**
+     * Downloads the file index of a mod from the repository.
+     */
+    public ModIndex fetchModIndex(String modUrl) throws IOException {
+        HttpRequest request = manifestCodec.negotiate(HttpRequest.newBuilder()
+                .uri(URI.create(modUrl + "/index")))
+            .GET()
+            .build();
+        try {
+            HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            if (response.statusCode() != 200) {
+                response.body().close();
+                throw new IOException("Failed to fetch mod index: HTTP " + response.statusCode());
+            }
+            return manifestCodec.read(response, ModIndex.class);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching mod index", e);
+        }
+    }
+
+    /**
+     * Lists one folder of the remote tree of a mod.
+     * @param path folder path relative to the mod folder, {@code ""} for the mod folder
+     * @return null if the repository has no such folder or does not list trees
+     */
+    public ModFolder fetchModFolder(String modUrl, String path) throws IOException {
+        HttpRequest request = manifestCodec.negotiate(HttpRequest.newBuilder()
+                .uri(URI.create(modUrl + "/tree?path=" + URLEncoder.encode(path, StandardCharsets.UTF_8))))
+            .GET()
+            .build();
+        try {
+            HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            if (response.statusCode() == 404) {
+                response.body().close();
+                return null;
+            }
+            if (response.statusCode() != 200) {
+                response.body().close();
+                throw new IOException("Failed to list folder '" + path + "' of mod: HTTP " + response.statusCode());
+            }
+            return manifestCodec.read(response, ModFolder.class);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while listing mod folder", e);
+        }
+    }
+
+    /**
+     * Compares the remote tree with the local mod folder without modifying anything, walking
+     * down from the mod folder. Only folders whose hash differs from the local tree are listed,
+     * and only files whose hash differs are compared, so an unchanged mod costs one request and a
+     * small change costs one listing per folder on its path instead of the whole index.
+     * <p>
+     * The local tree is built from the hashes in the state store. Files without a current hash
+     * get one that matches nothing, so their folders are listed and the files compared as usual.
+     * @return null if the repository does not list trees
+     */
+    public SyncPlan planByTree(String modUrl, Path localModDir) throws IOException {
+        ModFolder root = fetchModFolder(modUrl, "");
+        if (root == null) {
+            return null;
+        }
+        HashAlgorithm algorithm = HashAlgorithm.forName(root.getHashAlgorithm());
+        Map<String, BasicFileAttributes> localFiles = scanLocalFiles(localModDir);
+        ModTree localTree = new ModTree(algorithm);
+        String unknownHash = HexFormat.of().formatHex(new byte[algorithm.length()]);
+        localFiles.forEach((path, attrs) -> {
+            String hash = stateStore.cachedHash(localModDir.resolve(path), attrs, algorithm);
+            localTree.add(path, hash != null ? hash : unknownHash);
+        });
+
+        SyncPlan plan = new SyncPlan(root.getName());
+        Set<String> remotePaths = new HashSet<>();
+        // Subfolder names of every listed folder, by the listed folder's path
+        Map<String, Set<String>> listedFolders = new HashMap<>();
+        Deque<ModFolder> pending = new ArrayDeque<>(List.of(root));
+        while (!pending.isEmpty()) {
+            ModFolder folder = pending.pop();
+            String prefix = folder.getPath().isEmpty() ? "" : folder.getPath() + "/";
+            ModTree.Listing local = localTree.list(folder.getPath()).orElse(null);
+            Set<String> subfolders = new HashSet<>();
+            listedFolders.put(folder.getPath(), subfolders);
+            for (ModFolder.Folder subfolder : folder.getFolders()) {
+                subfolders.add(subfolder.getName());
+                String path = prefix + subfolder.getName();
+                if (local != null && sameHash(subfolder.getHash(), local.folders().get(subfolder.getName()))) {
+                    plan.setUnchangedFiles(plan.getUnchangedFiles() + localTree.fileCount(path));
+                    continue;
+                }
+                ModFolder listed = fetchModFolder(modUrl, path);
+                if (listed == null) {
+                    throw new IOException("Folder " + path + " disappeared from the repository while planning");
+                }
+                pending.push(listed);
+            }
+            for (ModFile remoteFile : folder.getFiles()) {
+                remotePaths.add(remoteFile.getPath());
+                String name = remoteFile.getPath().substring(prefix.length());
+                BasicFileAttributes attrs = localFiles.get(remoteFile.getPath());
+                if (attrs != null && attrs.size() == remoteFile.getSize() && local != null
+                        && sameHash(remoteFile.getHash(), local.files().get(name))) {
+                    plan.setUnchangedFiles(plan.getUnchangedFiles() + 1);
+                    continue;
+                }
+                planFile(plan, remoteFile, modUrl, localModDir, attrs);
+            }
+        }
+
+        for (String localPath : localFiles.keySet()) {
+            if (remotePaths.contains(localPath) || inMatchingFolder(localPath, listedFolders)
+                    || isResumableDownload(localPath, remotePaths)) {
+                continue;
+            }
+            plan.getDeletions().add(localPath);
+        }
+        log.debug("Planned {} by listing {} of its folders", root.getName(), listedFolders.size());
+        return plan;
+    }
+
+    /**
+     * Whether the local file lies in a folder that was not listed because it matched the remote
+     * folder, which means the file is part of the mod.
+     */
+    private static boolean inMatchingFolder(String localPath, Map<String, Set<String>> listedFolders) {
+        String[] names = localPath.split("/");
+        String folder = "";
+        for (int i = 0; i < names.length - 1; i++) {
+            String child = folder.isEmpty() ? names[i] : folder + "/" + names[i];
+            if (!listedFolders.containsKey(child)) {
+                return listedFolders.get(folder).contains(names[i]);
+            }
+            folder = child;
+        }
+        return false;
+    }
+
+    /**
+     * Compares the remote index with the local mod folder without modifying anything.
+     */
+    public SyncPlan planSync(ModIndex remote, String modUrl, Path localModDir) throws IOException {
+        SyncPlan plan = new SyncPlan(remote.getName());
+        Map<String, BasicFileAttributes> localFiles = scanLocalFiles(localModDir);
+        Set<String> remotePaths = new HashSet<>();
+
+        for (ModFile remoteFile : remote.getFiles()) {
+            remotePaths.add(remoteFile.getPath());
+            planFile(plan, remoteFile, modUrl, localModDir, localFiles.get(remoteFile.getPath()));
+        }
+
+        for (String localPath : localFiles.keySet()) {
+            if (remotePaths.contains(localPath)) {
+                continue;
+            }
+            // Keep partial downloads of files that are still wanted so they can be resumed
+            if (isResumableDownload(localPath, remotePaths)) {
+                continue;
+            }
+            plan.getDeletions().add(localPath);
+        }
+        return plan;
+    }
+
+    /**
+     * Adds a remote file to the plan: unchanged, a delta against the local copy, or a download.
+     * @param local attributes of the local copy, or null if there is none
+     */
+    private void planFile(SyncPlan plan, ModFile remoteFile, String modUrl, Path localModDir,
+                          BasicFileAttributes local) throws IOException {
+        if (!localModDir.resolve(remoteFile.getPath()).normalize().startsWith(localModDir.normalize())) {
+            throw new IOException("Mod index entry points outside the mod folder: " + remoteFile.getPath());
+        }
+        if (local == null) {
+            plan.getDownloads().add(remoteFile);
+            return;
+        }
+        Path localFile = localModDir.resolve(remoteFile.getPath());
+        HashAlgorithm algorithm = algorithmOf(remoteFile);
+        // Files not modified since they were last hashed or written are not read again
+        if (local.size() == remoteFile.getSize()
+                && sameHash(remoteFile.getHash(), stateStore.cachedHash(localFile, local, algorithm))) {
+            plan.setUnchangedFiles(plan.getUnchangedFiles() + 1);
+            return;
+        }
+        List<SyncPlan.Segment> segments = null;
+        long readStart = System.currentTimeMillis();
+        if (hasChunkHashes(remoteFile)) {
+            // One read yields both the hash for the unchanged check and the local chunks
+            FastCdc.Result localChunks = FastCdc.chunkFile(localFile, algorithm);
+            stateStore.record(localFile, local, algorithm.format(localChunks.fileHash()), readStart);
+            if (local.size() == remoteFile.getSize() && sameHash(remoteFile.getHash(), localChunks.fileHash())) {
+                plan.setUnchangedFiles(plan.getUnchangedFiles() + 1);
+                return;
+            }
+            segments = matchChunks(remoteFile, localChunks.chunks());
+        } else if (local.size() == remoteFile.getSize()
+                && sameHash(remoteFile.getHash(), stateStore.hash(localFile, local, algorithm))) {
+            plan.setUnchangedFiles(plan.getUnchangedFiles() + 1);
+            return;
+        }
+        if (segments == null) {
+            segments = matchBlocks(modUrl, remoteFile, localFile);
+        }
+
+        SyncPlan.FileDelta delta = segments != null ? new SyncPlan.FileDelta(remoteFile, segments) : null;
+        if (delta != null && delta.bytesToTransfer() <= remoteFile.getSize() * PATCH_THRESHOLD) {
+            plan.getDeltas().add(delta);
+        } else {
+            plan.getDownloads().add(remoteFile);
+        }
+    }
+
+    /**
+     * Whether the file is the part file of a wanted file, or that part file's download journal.
+     */
+    private static boolean isResumableDownload(String localPath, Set<String> remotePaths) {
+        String path = localPath;
+        if (path.endsWith(DownloadJournal.SUFFIX)) {
+            path = path.substring(0, path.length() - DownloadJournal.SUFFIX.length());
+        }
+        return path.endsWith(PART_SUFFIX) && remotePaths.contains(path.substring(0, path.length() - PART_SUFFIX.length()));
+    }
+
+    private void applyPlan(SyncPlan plan, String modUrl, Path localModDir,
+                           Consumer<DownloadProgress> progressCallback) throws IOException {
+        DownloadProgress progress = new DownloadProgress(plan.getBytesToTransfer());
+        progress.setStatus("Synchronizing " + plan.getModName());
+        notify(progress, progressCallback);
+
+        for (SyncPlan.FileDelta delta : plan.getDeltas()) {
+            checkCancelled(progress);
+            Path target = localModDir.resolve(delta.file().getPath());
+            long downloadedBefore = progress.getDownloadedBytes().get();
+            if (!applyDelta(delta, fileUrl(modUrl, delta.file()), target, progress, progressCallback)) {
+                log.warn("Rebuilt file {} failed verification, downloading it completely", target);
+                // Take back only what the delta counted; it may have stopped before fetching anything
+                progress.getDownloadedBytes().set(downloadedBefore);
+                progress.addTotalBytes(delta.file().getSize() - delta.bytesToTransfer());
+                downloadFile(delta.file(), fileUrl(modUrl, delta.file()), target, progress, progressCallback);
+            }
+            recordVerified(target, delta.file());
+        }
+        for (ModFile file : plan.getDownloads()) {
+            checkCancelled(progress);
+            Path target = localModDir.resolve(file.getPath());
+            downloadFile(file, fileUrl(modUrl, file), target, progress, progressCallback);
+            recordVerified(target, file);
+        }
+        for (String obsolete : plan.getDeletions()) {
+            Path path = localModDir.resolve(obsolete);
+            log.info("Removing file no longer part of {}: {}", plan.getModName(), path);
+            Files.deleteIfExists(path);
+            stateStore.remove(path);
+            deleteEmptyParents(path.getParent(), localModDir);
+        }
+
+        progress.setStatus("Complete");
+        notify(progress, progressCallback);
+    }
+
+    /**
+     * Records the hash of a file that was just written and verified against the index.
+     */
+    private void recordVerified(Path target, ModFile file) throws IOException {
+        HashAlgorithm algorithm = algorithmOf(file);
+        stateStore.record(target, Files.readAttributes(target, BasicFileAttributes.class),
+            algorithm.format(stripAlgorithm(file.getHash())));
+    }
+
+    private static boolean hasChunkHashes(ModFile remoteFile) {
+        List<ModChunk> chunks = remoteFile.getChunks();
+        return chunks != null && !chunks.isEmpty() && chunks.stream().allMatch(chunk -> chunk.getHash() != null);
+    }
+
+    /**
+     * Looks up every remote chunk among the content-defined chunks of the local copy by hash.
+     * @return the segments of the new file, or null if the local copy was too small to be chunked
+     */
+    private static List<SyncPlan.Segment> matchChunks(ModFile remoteFile, List<ModChunk> localChunks) {
+        if (localChunks == null) {
+            return null;
+        }
+        Map<String, Long> localOffsets = new HashMap<>();
+        for (ModChunk chunk : localChunks) {
+            localOffsets.putIfAbsent(stripAlgorithm(chunk.getHash()).toLowerCase(Locale.ROOT), chunk.getOffset());
+        }
+        List<SyncPlan.Segment> segments = new ArrayList<>(remoteFile.getChunks().size());
+        for (ModChunk chunk : remoteFile.getChunks()) {
+            long localOffset = localOffsets.getOrDefault(stripAlgorithm(chunk.getHash()).toLowerCase(Locale.ROOT), -1L);
+            segments.add(new SyncPlan.Segment(chunk.getOffset(), chunk.getLength(), localOffset));
+        }
+        return segments;
+    }
+
+    /**
+     * Fetches the server's block signatures of a file and locates its blocks in the local copy.
+     * @return the segments of the new file, or null if the file is too small or the server has no signatures
+     */
+    private List<SyncPlan.Segment> matchBlocks(String modUrl, ModFile remoteFile, Path localFile) throws IOException {
+        if (remoteFile.getSize() < DELTA_MIN_SIZE) {
+            return null;
+        }
+        HttpRequest request = manifestCodec.negotiate(HttpRequest.newBuilder()
+                .uri(URI.create(modUrl + "/signatures/" + encodePath(remoteFile.getPath()))))
+            .GET()
+            .build();
+        FileSignature signature;
+        try {
+            HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            if (response.statusCode() != 200) {
+                response.body().close();
+                log.debug("No block signatures for {}: HTTP {}", remoteFile.getPath(), response.statusCode());
+                return null;
+            }
+            signature = manifestCodec.read(response, FileSignature.class);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while fetching block signatures", e);
+        }
+        BlockMatcher.Match match = BlockMatcher.match(localFile, signature);
+        log.debug("{}: {} of {} bytes found in local copy", remoteFile.getPath(),
+            remoteFile.getSize() - match.missingBytes(), remoteFile.getSize());
+        List<SyncPlan.Segment> segments = new ArrayList<>(match.localOffsets().length);
+        for (int block = 0; block < match.localOffsets().length; block++) {
+            segments.add(new SyncPlan.Segment(match.blockOffset(block), match.blockLength(block), match.localOffsets()[block]));
+        }
+        return segments;
+    }
+
+    /**
+     * Assembles the new version of a file next to the old one: local segments are copied from
+     * the old copy, missing ones fetched in multi-range requests. The result replaces the
+     * local file only after its hash was verified.
+     * @return whether the rebuilt file matches the remote hash
+     */
+    private boolean applyDelta(SyncPlan.FileDelta delta, String url, Path target, DownloadProgress progress,
+                               Consumer<DownloadProgress> progressCallback) throws IOException {
+        Path rebuilt = target.resolveSibling(target.getFileName() + DELTA_SUFFIX);
+        List<RangeRequestClient.Range> missing = new ArrayList<>();
+        try (FileChannel source = FileChannel.open(target, StandardOpenOption.READ);
+             FileChannel output = FileChannel.open(rebuilt, StandardOpenOption.CREATE,
+                 StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (SyncPlan.Segment segment : delta.segments()) {
+                if (!segment.isLocal()) {
+                    missing.add(new RangeRequestClient.Range(segment.offset(), segment.length()));
+                    continue;
+                }
+                output.position(segment.offset());
+                long copied = 0;
+                while (copied < segment.length()) {
+                    long transferred = source.transferTo(segment.localOffset() + copied, segment.length() - copied, output);
+                    if (transferred <= 0) {
+                        // The local file shrank since the plan was made
+                        log.debug("{} ended before byte {}", target, segment.localOffset() + copied);
+                        Files.deleteIfExists(rebuilt);
+                        return false;
+                    }
+                    copied += transferred;
+                }
+            }
+            if (!missing.isEmpty()) {
+                rangeClient.fetch(url, RangeRequestClient.coalesce(missing), (offset, length, in) -> {
+                    writeRegion(output, offset, length, in, progress, progressCallback);
+                });
+            }
+            output.truncate(delta.file().getSize());
+        }
+
+        if (!sameHash(delta.file().getHash(), FileHasher.hash(rebuilt, algorithmOf(delta.file())))) {
+            Files.deleteIfExists(rebuilt);
+            return false;
+        }
+        Files.move(rebuilt, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        return true;
+    }
+
+    private void downloadFile(ModFile file, String url, Path target, DownloadProgress progress,
+                              Consumer<DownloadProgress> progressCallback) throws IOException {
+        Files.createDirectories(target.getParent());
+        if (file.getSize() == 0) {
+            Files.write(target, new byte[0]);
+            return;
+        }
+
+        // Download next to the target so an interrupted transfer never clobbers the old copy
+        Path part = target.resolveSibling(target.getFileName() + PART_SUFFIX);
+        long[] reported = {0};
+        boolean success = downloadService.downloadFile(url, part, file.getSize(), file.getHash(),
+                file.getChunks(), fileProgress -> {
+            if (progress.isCancelled()) {
+                fileProgress.setCancelled(true);
+            }
+            // Segments of the file report from several threads
+            synchronized (reported) {
+                long downloaded = fileProgress.getDownloadedBytes().get();
+                progress.getDownloadedBytes().addAndGet(downloaded - reported[0]);
+                reported[0] = downloaded;
+            }
+            notify(progress, progressCallback);
+        }).join();
+        if (!success) {
+            checkCancelled(progress);
+            throw new IOException("Failed to download " + file.getPath());
+        }
+        Files.move(part, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static void writeRegion(FileChannel channel, long offset, long length, InputStream in,
+                                    DownloadProgress progress, Consumer<DownloadProgress> progressCallback) throws IOException {
+        byte[] buffer = new byte[BUFFER_SIZE];
+        long position = offset;
+        long remaining = length;
+        while (remaining > 0) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+            if (read < 0) {
+                throw new IOException("Connection closed before range " + offset + "-" + (offset + length - 1) + " was complete");
+            }
+            ByteBuffer data = ByteBuffer.wrap(buffer, 0, read);
+            while (data.hasRemaining()) {
+                position += channel.write(data, position);
+            }
+            remaining -= read;
+            progress.getDownloadedBytes().addAndGet(read);
+            notify(progress, progressCallback);
+        }
+    }
+
+    private static Map<String, BasicFileAttributes> scanLocalFiles(Path localModDir) throws IOException {
+        Map<String, BasicFileAttributes> files = new HashMap<>();
+        if (!Files.isDirectory(localModDir)) {
+            return files;
+        }
+        Files.walkFileTree(localModDir, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (attrs.isRegularFile()) {
+                    files.put(localModDir.relativize(file).toString().replace('\\', '/'), attrs);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        return files;
+    }
+
+    private static void deleteEmptyParents(Path directory, Path stopAt) throws IOException {
+        while (directory != null && !directory.equals(stopAt) && directory.startsWith(stopAt)) {
+            try (var entries = Files.list(directory)) {
+                if (entries.findAny().isPresent()) {
+                    return;
+                }
+            }
+            Files.delete(directory);
+            directory = directory.getParent();
+        }
+    }
+
+    private static void checkCancelled(DownloadProgress progress) {
+        if (progress.isCancelled()) {
+            progress.setStatus("Cancelled");
+            throw new CancellationException("Sync cancelled");
+        }
+    }
+
+    private static void notify(DownloadProgress progress, Consumer<DownloadProgress> progressCallback) {
+        if (progressCallback != null) {
+            progressCallback.accept(progress);
+        }
+    }
+
+    static String modUrl(String repositoryUrl, String modSetName, String modName) {
+        return repositoryUrl.replaceAll("/+$", "") + "/api/v1/modsets/" + encodeSegment(modSetName)
+            + "/mods/" + encodeSegment(modName);
+    }
+
+    private static String fileUrl(String modUrl, ModFile file) {
+        return modUrl + "/files/" + encodePath(file.getPath());
+    }
+
+    private static String encodePath(String path) {
+        return Arrays.stream(path.split("/"))
+            .map(ModSyncService::encodeSegment)
+            .collect(Collectors.joining("/"));
+    }
+
+    private static String encodeSegment(String segment) {
+        return URLEncoder.encode(segment, StandardCharsets.UTF_8).replace("+", "%20");
+    }
+
+    /**
+     * Compares hashes ignoring case and an optional algorithm prefix such as {@code sha256:}.
+     */
+    static boolean sameHash(String expected, String actual) {
+        return expected != null && actual != null && stripAlgorithm(expected).equalsIgnoreCase(stripAlgorithm(actual));
+    }
+
+    private static String stripAlgorithm(String hash) {
+        return HashAlgorithm.hex(hash);
+    }
+
+    private static HashAlgorithm algorithmOf(ModFile file) throws IOException {
+        try {
+            return HashAlgorithm.of(file.getHash());
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Cannot verify " + file.getPath() + ": " + e.getMessage(), e);
+        }
+    }
+}
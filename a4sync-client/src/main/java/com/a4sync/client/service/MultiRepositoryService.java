@@ -6,15 +6,19 @@ import com.a4sync.client.model.HealthStatus;
 import com.a4sync.common.model.ModSet;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 import java.util.stream.Collectors;
 
 @Slf4j
 public class MultiRepositoryService {
     private final ClientConfig config;
     private final Map<String, RepositoryService> repositoryServices;
+    // Fresh services per probe pick up edited URLs and passwords; connections are pooled anyway
+    private final RepositoryHealthMonitor healthMonitor = new RepositoryHealthMonitor(this::createRepositoryService);
     
     public MultiRepositoryService(ClientConfig config) {
         this.config = config;
@@ -123,11 +127,19 @@ public class MultiRepositoryService {
     public CompletableFuture<HealthStatus> testConnection(Repository repository) {
         RepositoryService service = repositoryServices.get(repository.getId());
         if (service != null) {
-            return CompletableFuture.completedFuture(service.testConnectionHealth());
+            return service.testConnectionAsync();
         }
         return CompletableFuture.completedFuture(HealthStatus.ERROR);
     }
     
+    /**
+     * Checks all given repositories concurrently, see {@link RepositoryHealthMonitor#checkAll}.
+     */
+    public CompletableFuture<Map<Repository, HealthStatus>> testConnections(Collection<Repository> repositories,
+                                                                            BiConsumer<Repository, HealthStatus> listener) {
+        return healthMonitor.checkAll(repositories, listener);
+    }
+    
     public RepositoryService getRepositoryService(String repositoryId) {
         return repositoryServices.get(repositoryId);
     }
@@ -0,0 +1,267 @@
+package com.a4sync.client.service;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Fetches scattered byte ranges of a remote file with as few requests as possible.
+ * Ranges are sent in batches as one multi-range request each; the server answers with a
+ * {@code multipart/byteranges} body, a single 206 part, or the whole file if it ignores ranges.
+ * When the repository has mirrors, a batch whose mirror fails is continued on another one with
+ * the ranges that did not arrive yet.
+ */
+@Slf4j
+public class RangeRequestClient {
+    // Stay well below the server's limit on ranges per request
+    private static final int MAX_RANGES_PER_REQUEST = 64;
+    private static final Pattern CONTENT_RANGE = Pattern.compile("bytes (\\d+)-(\\d+)/(\\d+|\\*)");
+
+    /**
+     * A byte range of the remote file.
+     */
+    public record Range(long offset, long length) {
+        long end() {
+            return offset + length - 1;
+        }
+    }
+
+    /**
+     * Receives the bytes of one region. Exactly {@code length} bytes must be consumed from {@code in}.
+     */
+    @FunctionalInterface
+    public interface RegionSink {
+        void accept(long offset, long length, InputStream in) throws IOException;
+    }
+
+    private final HttpClient client;
+    private final TransferLimiter limiter;
+    private final MirrorMonitor mirrors;
+
+    public RangeRequestClient() {
+        this(TransferLimiter.unlimited());
+    }
+
+    public RangeRequestClient(TransferLimiter limiter) {
+        this(limiter, MirrorMonitor.shared());
+    }
+
+    public RangeRequestClient(TransferLimiter limiter, MirrorMonitor mirrors) {
+        this.limiter = limiter;
+        this.mirrors = mirrors;
+        this.client = HttpClients.shared();
+    }
+
+    /**
+     * Downloads the given ranges and hands every received region to the sink.
+     * If the server responds with the complete file instead, the sink receives it as a single
+     * region starting at offset 0.
+     */
+    public void fetch(String url, List<Range> ranges, RegionSink sink) throws IOException {
+        for (int i = 0; i < ranges.size(); i += MAX_RANGES_PER_REQUEST) {
+            List<Range> batch = ranges.subList(i, Math.min(ranges.size(), i + MAX_RANGES_PER_REQUEST));
+            if (!fetchWithFailover(url, batch, sink)) {
+                // The whole file was delivered, no need for further batches
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return false if the server sent the complete file
+     */
+    private boolean fetchWithFailover(String url, List<Range> batch, RegionSink sink) throws IOException {
+        Set<String> failedMirrors = new HashSet<>();
+        int attempts = mirrors.mirrorCount(url);
+        List<Range> remaining = batch;
+        for (int attempt = 1; ; attempt++) {
+            List<Range> received = new ArrayList<>();
+            // The mirror is chosen once a connection is free, so queueing does not count against it
+            limiter.acquireConnection();
+            MirrorMonitor.Lease lease = mirrors.acquire(url, failedMirrors);
+            try {
+                AtomicLong throttled = new AtomicLong();
+                long requested = System.nanoTime();
+                boolean ranged = fetchBatch(lease.url(), remaining, throttled, (offset, length, in) -> {
+                    sink.accept(offset, length, in);
+                    received.add(new Range(offset, length));
+                });
+                lease.transferred(received.stream().mapToLong(Range::length).sum(),
+                    System.nanoTime() - requested - throttled.get());
+                return ranged;
+            } catch (IOException e) {
+                if (e instanceof InterruptedIOException) {
+                    throw e;
+                }
+                lease.failed();
+                if (attempt >= attempts) {
+                    throw e;
+                }
+                log.debug("Mirror {} failed on ranges of {}: {}", lease.base(), url, e.getMessage());
+                failedMirrors.add(lease.base());
+                remaining = remaining.stream()
+                    .filter(range -> received.stream().noneMatch(region ->
+                        region.offset() <= range.offset() && region.end() >= range.end()))
+                    .toList();
+                if (remaining.isEmpty()) {
+                    return true;
+                }
+            } finally {
+                lease.close();
+                limiter.releaseConnection();
+            }
+        }
+    }
+
+    /**
+     * Sends one multi-range request. The caller holds a connection permit.
+     * @return false if the server sent the complete file
+     */
+    private boolean fetchBatch(String url, List<Range> batch, AtomicLong throttled, RegionSink sink) throws IOException {
+        StringBuilder header = new StringBuilder("bytes=");
+        for (Range range : batch) {
+            if (header.length() > 6) {
+                header.append(',');
+            }
+            header.append(range.offset()).append('-').append(range.end());
+        }
+        HttpRequest request = HttpRequest.newBuilder()
+            .uri(URI.create(url))
+            .header("Range", header.toString())
+            .GET()
+            .build();
+
+        HttpResponse<InputStream> response;
+        try {
+            response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Range request to " + url + " interrupted");
+        }
+
+        try (InputStream body = new BufferedInputStream(limiter.throttled(response.body(), throttled))) {
+            int status = response.statusCode();
+            if (status == 200) {
+                long length = response.headers().firstValueAsLong("Content-Length")
+                    .orElseThrow(() -> new IOException("Full response without Content-Length from " + url));
+                log.debug("Server ignored ranges for {}, receiving complete file", url);
+                sink.accept(0, length, body);
+                return false;
+            }
+            if (status != 206) {
+                throw new IOException("Server returned HTTP " + status + " for range request to " + url);
+            }
+
+            String contentType = response.headers().firstValue("Content-Type").orElse("");
+            if (contentType.toLowerCase(Locale.ROOT).startsWith("multipart/byteranges")) {
+                readMultipart(body, boundaryOf(contentType), sink);
+            } else {
+                Range range = parseContentRange(response.headers().firstValue("Content-Range").orElse(""));
+                sink.accept(range.offset(), range.length(), body);
+            }
+            return true;
+        }
+    }
+
+    private static void readMultipart(InputStream body, String boundary, RegionSink sink) throws IOException {
+        String delimiter = "--" + boundary;
+        String closing = delimiter + "--";
+        while (true) {
+            String line = readLine(body);
+            if (line == null || line.equals(closing)) {
+                return;
+            }
+            if (!line.equals(delimiter)) {
+                // Preamble or the CRLF that precedes every delimiter
+                continue;
+            }
+            Range range = null;
+            for (String partHeader = readLine(body); partHeader != null && !partHeader.isEmpty(); partHeader = readLine(body)) {
+                if (partHeader.regionMatches(true, 0, "Content-Range:", 0, 14)) {
+                    range = parseContentRange(partHeader.substring(14).trim());
+                }
+            }
+            if (range == null) {
+                throw new IOException("Multipart range response is missing a Content-Range");
+            }
+            sink.accept(range.offset(), range.length(), body);
+        }
+    }
+
+    private static String boundaryOf(String contentType) throws IOException {
+        for (String parameter : contentType.split(";")) {
+            String trimmed = parameter.trim();
+            if (trimmed.regionMatches(true, 0, "boundary=", 0, 9)) {
+                return trimmed.substring(9).replace("\"", "");
+            }
+        }
+        throw new IOException("Multipart response without boundary: " + contentType);
+    }
+
+    private static Range parseContentRange(String value) throws IOException {
+        Matcher matcher = CONTENT_RANGE.matcher(value);
+        if (!matcher.find()) {
+            throw new IOException("Invalid Content-Range: " + value);
+        }
+        long start = Long.parseLong(matcher.group(1));
+        long end = Long.parseLong(matcher.group(2));
+        return new Range(start, end - start + 1);
+    }
+
+    /**
+     * Reads a CRLF terminated header line, or returns null at the end of the stream.
+     */
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                byte[] bytes = line.toByteArray();
+                int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                return new String(bytes, 0, length, StandardCharsets.US_ASCII);
+            }
+            line.write(b);
+            if (line.size() > 8192) {
+                throw new EOFException("Multipart header line too long");
+            }
+        }
+        return line.size() > 0 ? line.toString(StandardCharsets.US_ASCII) : null;
+    }
+
+    /**
+     * Merges adjacent ranges so fewer parts have to be sent.
+     */
+    public static List<Range> coalesce(List<Range> sortedRanges) {
+        List<Range> merged = new ArrayList<>();
+        for (Range range : sortedRanges) {
+            if (!merged.isEmpty()) {
+                Range last = merged.get(merged.size() - 1);
+                if (range.offset() <= last.end() + 1) {
+                    merged.set(merged.size() - 1, new Range(last.offset(),
+                        Math.max(last.end(), range.end()) - last.offset() + 1));
+                    continue;
+                }
+            }
+            merged.add(range);
+        }
+        return merged;
+    }
+}
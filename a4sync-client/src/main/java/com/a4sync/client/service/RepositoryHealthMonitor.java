@@ -0,0 +1,82 @@
+package com.a4sync.client.service;
+
+import com.a4sync.client.model.HealthStatus;
+import com.a4sync.client.model.Repository;
+import lombok.extern.slf4j.Slf4j;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+/**
+ * Checks the health of many repositories at once. Every repository is probed concurrently over
+ * the shared {@link HttpClients#shared() HTTP client}, each request with its own timeout, and
+ * each result is published as soon as it arrives. A refresh therefore takes as long as the
+ * slowest repository, at most the timeout, instead of the sum of all of them.
+ */
+@Slf4j
+public class RepositoryHealthMonitor {
+    private final Function<Repository, RepositoryService> services;
+    private final Duration timeout;
+
+    /**
+     * @param services the service to probe a repository with
+     * @param timeout how long a single repository may take to answer
+     */
+    public RepositoryHealthMonitor(Function<Repository, RepositoryService> services, Duration timeout) {
+        this.services = services;
+        this.timeout = timeout;
+    }
+
+    public RepositoryHealthMonitor(Function<Repository, RepositoryService> services) {
+        this(services, RepositoryService.HEALTH_TIMEOUT);
+    }
+
+    /**
+     * Probes all repositories.
+     * @param listener receives each repository with its status as soon as it is known, on an
+     *                 HTTP client thread; may be null
+     * @return the status of every repository, in the given order, once all probes finished
+     */
+    public CompletableFuture<Map<Repository, HealthStatus>> checkAll(Collection<Repository> repositories,
+                                                                     BiConsumer<Repository, HealthStatus> listener) {
+        List<Repository> probed = List.copyOf(repositories);
+        List<CompletableFuture<HealthStatus>> probes = probed.stream()
+            .map(repository -> check(repository).thenApply(status -> {
+                if (listener != null) {
+                    try {
+                        listener.accept(repository, status);
+                    } catch (RuntimeException e) {
+                        log.warn("Health listener failed for {}", repository.getName(), e);
+                    }
+                }
+                return status;
+            }))
+            .toList();
+        return CompletableFuture.allOf(probes.toArray(new CompletableFuture[0]))
+            .thenApply(done -> {
+                Map<Repository, HealthStatus> results = new LinkedHashMap<>();
+                for (int i = 0; i < probed.size(); i++) {
+                    results.put(probed.get(i), probes.get(i).join());
+                }
+                return results;
+            });
+    }
+
+    /**
+     * Probes one repository; never completes exceptionally.
+     */
+    public CompletableFuture<HealthStatus> check(Repository repository) {
+        try {
+            return services.apply(repository).checkHealth(timeout);
+        } catch (RuntimeException e) {
+            log.warn("Cannot check repository {}: {}", repository.getName(), e.getMessage());
+            return CompletableFuture.completedFuture(HealthStatus.ERROR);
+        }
+    }
+}
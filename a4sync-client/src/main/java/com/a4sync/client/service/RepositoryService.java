@@ -9,28 +9,45 @@ import com.a4sync.common.version.VersionInfo;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URI;
 import java.net.http.HttpClient;
+import java.net.http.HttpHeaders;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.time.Duration;
 import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 @Slf4j
 public class RepositoryService {
+    /**
+     * Last 200 response per URL together with its ETag. Shared by all instances because
+     * services are recreated per repository refresh, while the cached catalog stays valid.
+     * Callers of a cached response share its parsed body and must not modify it.
+     */
+    private static final Map<URI, CachedResponse> responseCache = new ConcurrentHashMap<>();
+    static final Duration HEALTH_TIMEOUT = Duration.ofSeconds(10);
+    // Health answers slower than this mark a reachable repository as degraded
+    private static final Duration SLOW_HEALTH_RESPONSE = Duration.ofSeconds(3);
+
     private final HttpClient client;
     private final ObjectMapper objectMapper;
     private final ClientConfig config;
+    private final ManifestCodec manifestCodec;
     private String repositoryUrl;
     
     public RepositoryService(ClientConfig config) {
         this.config = config;
-        this.client = HttpClient.newBuilder()
-            .connectTimeout(Duration.ofSeconds(30))
-            .build();
+        this.client = HttpClients.shared();
         this.objectMapper = new ObjectMapper();
         this.objectMapper.findAndRegisterModules();
+        this.manifestCodec = new ManifestCodec(objectMapper);
         setRepositoryUrl(config.getServerUrl());
     }
     
@@ -90,19 +107,50 @@ public class RepositoryService {
     }
     
     public CompletableFuture<HealthStatus> testConnectionAsync() {
+        return checkHealth(HEALTH_TIMEOUT);
+    }
+    
+    /**
+     * Probes the health endpoint without blocking a thread while waiting. Never completes
+     * exceptionally: unreachable repositories, errors and timeouts are {@link HealthStatus#ERROR},
+     * healthy repositories that take long to answer are {@link HealthStatus#DEGRADED}.
+     * @param timeout how long to wait for the response, including connecting
+     */
+    public CompletableFuture<HealthStatus> checkHealth(Duration timeout) {
         if (repositoryUrl == null) {
             return CompletableFuture.completedFuture(HealthStatus.ERROR);
         }
-        
-        return CompletableFuture.supplyAsync(() -> testConnectionHealth());
-    }
-
-    public CompletableFuture<com.a4sync.common.model.RepositoryInfo> getRepositoryInfo() {
-        HttpRequest request = createRequestBuilder("api/v1/repository/info")
+        HttpRequest request = createRequestBuilder("api/v1/health")
+            .timeout(timeout)
             .GET()
             .build();
-
+        long start = System.nanoTime();
         return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+            .thenApply(response -> {
+                HealthStatus status = healthOf(response);
+                if (status == HealthStatus.HEALTHY && System.nanoTime() - start > SLOW_HEALTH_RESPONSE.toNanos()) {
+                    return HealthStatus.DEGRADED;
+                }
+                return status;
+            })
+            // The request timeout does not cover reading the body
+            .completeOnTimeout(HealthStatus.ERROR, timeout.toMillis(), TimeUnit.MILLISECONDS)
+            .exceptionally(throwable -> {
+                log.debug("Health check of {} failed: {}", repositoryUrl, throwable.getMessage());
+                return HealthStatus.ERROR;
+            });
+    }
+    
+    private static HealthStatus healthOf(HttpResponse<String> response) {
+        if (response.statusCode() != 200) {
+            return HealthStatus.ERROR;
+        }
+        // Parse as simple JSON with "status" field
+        return response.body().contains("\"status\":\"UP\"") ? HealthStatus.HEALTHY : HealthStatus.DEGRADED;
+    }
+
+    public CompletableFuture<com.a4sync.common.model.RepositoryInfo> getRepositoryInfo() {
+        return sendConditional(createRequestBuilder("api/v1/repository/info"), com.a4sync.common.model.RepositoryInfo.class)
             .thenApply(response -> {
                 if (response.statusCode() == 429) {
                     String retryAfter = response.headers()
@@ -118,13 +166,6 @@ public class RepositoryService {
                     throw new RuntimeException("Unexpected response: " + response.statusCode());
                 }
                 return response.body();
-            })
-            .thenApply(body -> {
-                try {
-                    return objectMapper.readValue(body, com.a4sync.common.model.RepositoryInfo.class);
-                } catch (Exception e) {
-                    throw new RuntimeException("Failed to parse repository info", e);
-                }
             });
     }
     
@@ -168,8 +209,9 @@ public class RepositoryService {
             throw new IllegalStateException("Not connected to repository");
         }
         
+        // The repository URL ends with a slash; a doubled one is rejected by the server
         HttpRequest.Builder builder = HttpRequest.newBuilder()
-            .uri(URI.create(repositoryUrl + path));
+            .uri(URI.create(repositoryUrl + path.replaceFirst("^/+", "")));
             
         String authHeader = generateAuthHeader();
         if (authHeader != null) {
@@ -179,12 +221,68 @@ public class RepositoryService {
         return builder;
     }
     
-    public CompletableFuture<List<ModSet>> getModSets() {
-        HttpRequest request = createRequestBuilder("/api/v1/modsets")
-            .GET()
-            .build();
+    /**
+     * Sends a GET with If-None-Match when a previous response for the same URL is cached.
+     * A 304 Not Modified is answered with the cached 200 response, so callers handle
+     * both cases the same way while the server skips rebuilding and resending the body.
+     * The body of a 200 response is parsed while it streams in, in the compact format and
+     * encoding negotiated by the {@link ManifestCodec}; other bodies are discarded.
+     */
+    private <T> CompletableFuture<CatalogResponse<T>> sendConditional(HttpRequest.Builder builder, Class<T> type) {
+        HttpRequest request = manifestCodec.negotiate(builder).GET().build();
+        CachedResponse cached = responseCache.get(request.uri());
+        if (cached != null) {
+            request = HttpRequest.newBuilder(request, (name, value) -> true)
+                .header("If-None-Match", cached.eTag())
+                .build();
+        }
 
-        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+        return client.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+            .thenApply(response -> {
+                if (response.statusCode() == 304 && cached != null) {
+                    log.debug("Not modified, reusing cached response for {}", response.uri());
+                    closeQuietly(response.body());
+                    @SuppressWarnings("unchecked")
+                    CatalogResponse<T> reused = (CatalogResponse<T>) cached.response();
+                    return reused;
+                }
+                if (response.statusCode() != 200) {
+                    closeQuietly(response.body());
+                    return new CatalogResponse<T>(response.statusCode(), response.headers(), null);
+                }
+                CatalogResponse<T> parsed;
+                try {
+                    parsed = new CatalogResponse<>(200, response.headers(), manifestCodec.read(response, type));
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Failed to read response from " + response.uri(), e);
+                }
+                response.headers().firstValue("ETag").ifPresentOrElse(
+                    eTag -> responseCache.put(response.request().uri(), new CachedResponse(eTag, parsed)),
+                    () -> responseCache.remove(response.request().uri()));
+                return parsed;
+            });
+    }
+
+    private static void closeQuietly(InputStream body) {
+        try {
+            body.close();
+        } catch (IOException e) {
+            // Nothing left to read from it
+        }
+    }
+
+    /**
+     * Status, headers and parsed body of a catalog response; the body is null unless the
+     * status is 200.
+     */
+    private record CatalogResponse<T>(int statusCode, HttpHeaders headers, T body) {
+    }
+
+    private record CachedResponse(String eTag, CatalogResponse<?> response) {
+    }
+
+    public CompletableFuture<List<ModSet>> getModSets() {
+        return sendConditional(createRequestBuilder("/api/v1/modsets"), ModSet[].class)
             .thenApply(response -> {
                 if (response.statusCode() == 429) {
                     String retryAfter = response.headers()
@@ -199,23 +297,12 @@ public class RepositoryService {
                 if (response.statusCode() != 200) {
                     throw new RuntimeException("Unexpected response: " + response.statusCode());
                 }
-                return response.body();
-            })
-            .thenApply(body -> {
-                try {
-                    return List.of(objectMapper.readValue(body, ModSet[].class));
-                } catch (Exception e) {
-                    throw new RuntimeException("Failed to parse mod sets", e);
-                }
+                return List.of(response.body());
             });
     }
     
     public CompletableFuture<ModSet> getAutoConfig() {
-        HttpRequest request = createRequestBuilder("/api/v1/autoconfig")
-            .GET()
-            .build();
-            
-        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+        return sendConditional(createRequestBuilder("/api/v1/autoconfig"), ModSet.class)
             .thenApply(response -> {
                 if (response.statusCode() == 429) {
                     String retryAfter = response.headers()
@@ -230,46 +317,12 @@ public class RepositoryService {
                 if (response.statusCode() != 200) {
                     throw new RuntimeException("Unexpected response: " + response.statusCode());
                 }
-                try {
-                    return objectMapper.readValue(response.body(), ModSet.class);
-                } catch (Exception e) {
-                    throw new RuntimeException("Failed to parse auto config", e);
-                }
+                return response.body();
             });
     }
     
     public HealthStatus testConnectionHealth() {
-        try {
-            HttpRequest request = createRequestBuilder("/api/v1/health")
-                .GET()
-                .build();
-                
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-            
-            if (response.statusCode() == 401) {
-                return HealthStatus.ERROR;
-            }
-            if (response.statusCode() != 200) {
-                return HealthStatus.ERROR;
-            }
-            
-            // Try to parse health response
-            try {
-                // Parse as simple JSON with "status" field
-                if (response.body().contains("\"status\":\"UP\"")) {
-                    return HealthStatus.HEALTHY;
-                } else if (response.body().contains("\"status\":\"DEGRADED\"")) {
-                    return HealthStatus.DEGRADED;
-                } else {
-                    return HealthStatus.DEGRADED;
-                }
-            } catch (Exception e) {
-                return HealthStatus.DEGRADED;
-            }
-        } catch (Exception e) {
-            log.error("Connection test failed", e);
-            return HealthStatus.ERROR;
-        }
+        return checkHealth(HEALTH_TIMEOUT).join();
     }
     
     /**
@@ -279,11 +332,7 @@ public class RepositoryService {
      * @return CompletableFuture containing the ModSet details
      */
     public CompletableFuture<ModSet> getSpecificModSet(String modSetName) {
-        HttpRequest request = createRequestBuilder("/api/v1/modsets/" + modSetName)
-            .GET()
-            .build();
-
-        return client.sendAsync(request, HttpResponse.BodyHandlers.ofString())
+        return sendConditional(createRequestBuilder("/api/v1/modsets/" + modSetName), ModSet.class)
             .thenApply(response -> {
                 if (response.statusCode() == 429) {
                     String retryAfter = response.headers()
@@ -302,13 +351,6 @@ public class RepositoryService {
                     throw new RuntimeException("Unexpected response: " + response.statusCode());
                 }
                 return response.body();
-            })
-            .thenApply(body -> {
-                try {
-                    return objectMapper.readValue(body, ModSet.class);
-                } catch (Exception e) {
-                    throw new RuntimeException("Failed to parse modset details", e);
-                }
             });
     }
 
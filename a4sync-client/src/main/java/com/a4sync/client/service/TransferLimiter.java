@@ -0,0 +1,113 @@
+package com.a4sync.client.service;
+
+import com.a4sync.common.model.DownloadSettings;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Global budget shared by all transfers of a client: a cap on concurrent download connections
+ * and an optional cap on bytes per second. Every range request and file download takes a
+ * connection permit for as long as it reads its response body, whichever mod it belongs to.
+ */
+public class TransferLimiter {
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final Semaphore connections;
+    private final long bytesPerSecond;
+    // Point in time up to which the byte budget has been handed out
+    private long budgetUsedUntil = System.nanoTime();
+
+    public TransferLimiter(DownloadSettings settings) {
+        this(settings.getMaxConnections(), settings.getMaxBytesPerSecond());
+    }
+
+    /**
+     * @param maxConnections maximum number of concurrent connections
+     * @param bytesPerSecond maximum transfer rate, or 0 for no limit
+     */
+    public TransferLimiter(int maxConnections, long bytesPerSecond) {
+        this.connections = new Semaphore(Math.max(1, maxConnections), true);
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * A limiter that never blocks, for services used on their own.
+     */
+    public static TransferLimiter unlimited() {
+        return new TransferLimiter(Integer.MAX_VALUE, 0);
+    }
+
+    public void acquireConnection() throws InterruptedIOException {
+        try {
+            connections.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for a download connection");
+        }
+    }
+
+    public void releaseConnection() {
+        connections.release();
+    }
+
+    /**
+     * Accounts for {@code bytes} received and sleeps as long as the rate limit requires.
+     * Budget left unused carries over for at most one second, which bounds bursts.
+     * @return the nanoseconds spent sleeping
+     */
+    public long throttle(int bytes) throws InterruptedIOException {
+        if (bytesPerSecond <= 0 || bytes <= 0) {
+            return 0;
+        }
+        long wakeUp;
+        synchronized (this) {
+            budgetUsedUntil = Math.max(budgetUsedUntil, System.nanoTime() - NANOS_PER_SECOND)
+                + bytes * NANOS_PER_SECOND / bytesPerSecond;
+            wakeUp = budgetUsedUntil;
+        }
+        long delay = wakeUp - System.nanoTime();
+        if (delay <= 0) {
+            return 0;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while throttling download");
+        }
+        return delay;
+    }
+
+    /**
+     * Wraps a response body so that reading from it is subject to the rate limit, adding the
+     * time spent sleeping to {@code throttledNanos}.
+     */
+    public InputStream throttled(InputStream in, AtomicLong throttledNanos) {
+        if (bytesPerSecond <= 0) {
+            return in;
+        }
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    throttledNanos.addAndGet(throttle(1));
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                int read = super.read(buffer, offset, length);
+                throttledNanos.addAndGet(throttle(read));
+                return read;
+            }
+        };
+    }
+}
@@ -8,7 +8,10 @@ import lombok.Data;
 @Data
 public class DownloadSettings {
     private long chunkSize = 1048576; // 1MB
-    private int maxParallelDownloads = 4;
+    private int maxParallelDownloads = 4; // connections per file
+    private int maxConcurrentMods = 4;
+    private int maxConnections = 8; // across all mods being downloaded
+    private long maxBytesPerSecond = 0; // 0 = unlimited
     private boolean verifyChecksums = true;
     private boolean enableResume = true;
     private int downloadTimeoutMs = 30000;
@@ -0,0 +1,24 @@
+package com.a4sync.common.model;
+
+import lombok.Data;
+import java.util.List;
+
+/**
+ * Block signatures of a file for rsync-style delta transfer. Every block of {@code blockSize}
+ * bytes (the last one may be shorter) is described by a weak rolling checksum and a strong hash,
+ * so a client can find the blocks anywhere in an older local copy.
+ */
+@Data
+public class FileSignature {
+    private String path;                // Relative path in mod
+    private long size;                  // File size in bytes
+    private String hash;                // Hash of the whole file
+    private int blockSize;              // Size of all blocks but the last
+    private List<BlockSignature> blocks; // Signatures in file order
+
+    @Data
+    public static class BlockSignature {
+        private int weak;               // Rolling checksum
+        private String strong;          // Truncated SHA-256 of the block
+    }
+}
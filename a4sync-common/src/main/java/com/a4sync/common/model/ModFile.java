@@ -1,5 +1,6 @@
 package com.a4sync.common.model;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import lombok.Data;
 import java.util.List;
 
@@ -11,5 +12,7 @@ public class ModFile {
     private String path;        // Relative path in mod
     private long size;          // File size in bytes
     private String hash;        // File hash
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Long lastModified;  // Modification time in epoch millis when hashed, if recorded
     private List<ModChunk> chunks; // File chunks for download
 }
\ No newline at end of file
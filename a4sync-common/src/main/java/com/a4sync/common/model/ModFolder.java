@@ -0,0 +1,25 @@
+package com.a4sync.common.model;
+
+import lombok.Data;
+import java.util.List;
+
+/**
+ * One folder of a mod's Merkle tree (see {@code ModTree}): the hash of the folder, the hashes of
+ * its subfolders and the files directly in it. A client compares the folder hashes with its own
+ * tree and only lists the subfolders whose hashes differ.
+ */
+@Data
+public class ModFolder {
+    private String name;                // Mod name (e.g., @CUP_Terrains)
+    private String path;                // Folder path relative to the mod, empty for the mod folder
+    private String hash;                // Hash of the folder's subtree
+    private String hashAlgorithm;       // Algorithm of all hashes, null means sha256
+    private List<Folder> folders;       // Subfolders in name order
+    private List<ModFile> files;        // Files directly in this folder, with their chunks
+
+    @Data
+    public static class Folder {
+        private String name;            // Folder name
+        private String hash;            // Hash of the subfolder's subtree
+    }
+}
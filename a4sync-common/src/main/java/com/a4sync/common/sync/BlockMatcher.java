@@ -0,0 +1,165 @@
+package com.a4sync.common.sync;
+
+import com.a4sync.common.model.FileSignature;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the blocks of a remote {@link FileSignature} in a local file at any byte offset.
+ * The weak checksum is rolled over the local file one byte at a time; only when it hits a
+ * known block is the strong hash computed. Data inserted or removed anywhere in the file
+ * therefore only costs the blocks it actually touches.
+ */
+public final class BlockMatcher {
+    private static final int READ_SIZE = 1024 * 1024;
+
+    private BlockMatcher() {
+    }
+
+    /**
+     * Result of matching: for every remote block the offset of identical content in the local
+     * file, or -1 if the block has to be downloaded.
+     */
+    public record Match(FileSignature signature, long[] localOffsets) {
+        public long blockOffset(int block) {
+            return (long) block * signature.getBlockSize();
+        }
+
+        public int blockLength(int block) {
+            return (int) Math.min(signature.getBlockSize(), signature.getSize() - blockOffset(block));
+        }
+
+        public long missingBytes() {
+            long missing = 0;
+            for (int i = 0; i < localOffsets.length; i++) {
+                if (localOffsets[i] < 0) {
+                    missing += blockLength(i);
+                }
+            }
+            return missing;
+        }
+    }
+
+    public static Match match(Path localFile, FileSignature signature) throws IOException {
+        List<FileSignature.BlockSignature> blocks = signature.getBlocks();
+        int blockSize = signature.getBlockSize();
+        long[] localOffsets = new long[blocks.size()];
+        Arrays.fill(localOffsets, -1);
+
+        // Only full size blocks take part in rolling; a shorter last block is checked at the end
+        Map<Integer, List<Integer>> blocksByWeak = new HashMap<>();
+        boolean[] weakFilter = new boolean[1 << 16];
+        int fullBlocks = (int) (signature.getSize() / blockSize);
+        for (int i = 0; i < fullBlocks; i++) {
+            int weak = blocks.get(i).getWeak();
+            blocksByWeak.computeIfAbsent(weak, key -> new ArrayList<>(1)).add(i);
+            weakFilter[filterIndex(weak)] = true;
+        }
+
+        MessageDigest digest = BlockSignatures.newDigest();
+        try (FileChannel channel = FileChannel.open(localFile, StandardOpenOption.READ)) {
+            long localSize = channel.size();
+            if (!blocksByWeak.isEmpty()) {
+                rollOver(channel, blockSize, blocks, blocksByWeak, weakFilter, localOffsets, digest);
+            }
+            if (fullBlocks < blocks.size()) {
+                matchTail(channel, localSize, blocks.get(fullBlocks), fullBlocks, localOffsets, digest,
+                    (int) (signature.getSize() - (long) fullBlocks * blockSize));
+            }
+        }
+        return new Match(signature, localOffsets);
+    }
+
+    private static void rollOver(FileChannel channel, int blockSize, List<FileSignature.BlockSignature> blocks,
+                                 Map<Integer, List<Integer>> blocksByWeak, boolean[] weakFilter,
+                                 long[] localOffsets, MessageDigest digest) throws IOException {
+        byte[] buffer = new byte[Math.max(READ_SIZE, 2 * blockSize)];
+        long bufferPosition = 0;   // file offset of buffer[0]
+        int start = 0;             // window start within the buffer
+        int end = 0;               // number of valid bytes in the buffer
+        boolean eof = false;
+        RollingChecksum checksum = new RollingChecksum(blockSize);
+        boolean windowValid = false;
+
+        while (true) {
+            // Keep at least one block plus the next byte available
+            if (end - start <= blockSize && !eof) {
+                System.arraycopy(buffer, start, buffer, 0, end - start);
+                bufferPosition += start;
+                end -= start;
+                start = 0;
+                int read = channel.read(ByteBuffer.wrap(buffer, end, buffer.length - end), bufferPosition + end);
+                if (read < 0) {
+                    eof = true;
+                } else {
+                    end += read;
+                }
+                continue;
+            }
+            if (end - start < blockSize) {
+                return;
+            }
+            if (!windowValid) {
+                checksum.reset(buffer, start);
+                windowValid = true;
+            }
+
+            // The filter avoids a boxed map lookup for the vast majority of positions
+            int weak = checksum.value();
+            List<Integer> candidates = weakFilter[filterIndex(weak)] ? blocksByWeak.get(weak) : null;
+            boolean matched = false;
+            if (candidates != null) {
+                String strong = BlockSignatures.strongHash(digest, buffer, start, blockSize);
+                for (int block : candidates) {
+                    if (blocks.get(block).getStrong().equals(strong)) {
+                        if (localOffsets[block] < 0) {
+                            localOffsets[block] = bufferPosition + start;
+                        }
+                        matched = true;
+                    }
+                }
+            }
+
+            if (matched) {
+                start += blockSize;
+                windowValid = false;
+            } else if (end - start > blockSize) {
+                checksum.roll(buffer[start], buffer[start + blockSize]);
+                start++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private static int filterIndex(int weak) {
+        return (weak ^ (weak >>> 16)) & 0xffff;
+    }
+
+    private static void matchTail(FileChannel channel, long localSize, FileSignature.BlockSignature tail, int block,
+                                  long[] localOffsets, MessageDigest digest, int length) throws IOException {
+        if (localSize < length) {
+            return;
+        }
+        // Trailing data usually stays at the end of the file
+        byte[] data = new byte[length];
+        ByteBuffer target = ByteBuffer.wrap(data);
+        long position = localSize - length;
+        while (target.hasRemaining() && channel.read(target, position + target.position()) > 0) {
+            // keep reading
+        }
+        if (!target.hasRemaining() && BlockSignatures.strongHash(digest, data, 0, length).equals(tail.getStrong())) {
+            localOffsets[block] = position;
+        }
+    }
+}
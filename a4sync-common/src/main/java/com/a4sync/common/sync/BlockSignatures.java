@@ -0,0 +1,78 @@
+package com.a4sync.common.sync;
+
+import com.a4sync.common.model.FileSignature;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+/**
+ * Computes {@link FileSignature}s. The block size grows with the square root of the file size,
+ * as in rsync, which keeps both the signature and the amount of re-sent data small.
+ */
+public final class BlockSignatures {
+    public static final int MIN_BLOCK_SIZE = 4 * 1024;
+    public static final int MAX_BLOCK_SIZE = 1024 * 1024;
+    // 128 bits of SHA-256 are plenty once the weak checksum matched and the file hash is verified
+    private static final int STRONG_HASH_BYTES = 16;
+
+    private BlockSignatures() {
+    }
+
+    /**
+     * Returns the block size used for a file of the given size: the power of two
+     * nearest above its square root, within {@link #MIN_BLOCK_SIZE} and {@link #MAX_BLOCK_SIZE}.
+     */
+    public static int blockSizeFor(long fileSize) {
+        long root = (long) Math.ceil(Math.sqrt((double) fileSize));
+        int blockSize = MIN_BLOCK_SIZE;
+        while (blockSize < root && blockSize < MAX_BLOCK_SIZE) {
+            blockSize <<= 1;
+        }
+        return blockSize;
+    }
+
+    /**
+     * Reads the file once and returns the signature of all of its blocks.
+     */
+    public static FileSignature compute(Path file, String path, String fileHash) throws IOException {
+        long size = Files.size(file);
+        int blockSize = blockSizeFor(size);
+        List<FileSignature.BlockSignature> blocks = new ArrayList<>((int) (size / blockSize + 1));
+        MessageDigest digest = newDigest();
+
+        byte[] block = new byte[blockSize];
+        try (InputStream in = Files.newInputStream(file)) {
+            int length;
+            while ((length = in.readNBytes(block, 0, blockSize)) > 0) {
+                FileSignature.BlockSignature signature = new FileSignature.BlockSignature();
+                signature.setWeak(RollingChecksum.of(block, 0, length));
+                signature.setStrong(strongHash(digest, block, 0, length));
+                blocks.add(signature);
+            }
+        }
+
+        FileSignature signature = new FileSignature();
+        signature.setPath(path);
+        signature.setSize(size);
+        signature.setHash(fileHash);
+        signature.setBlockSize(blockSize);
+        signature.setBlocks(blocks);
+        return signature;
+    }
+
+    static String strongHash(MessageDigest digest, byte[] data, int offset, int length) {
+        digest.reset();
+        digest.update(data, offset, length);
+        return HexFormat.of().formatHex(digest.digest(), 0, STRONG_HASH_BYTES);
+    }
+
+    static MessageDigest newDigest() {
+        return FileHasher.newDigest();
+    }
+}
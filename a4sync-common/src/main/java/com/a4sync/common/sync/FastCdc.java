@@ -0,0 +1,179 @@
+package com.a4sync.common.sync;
+
+import com.a4sync.common.model.ModChunk;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+/**
+ * Content-defined chunking with FastCDC (Xia et al., USENIX ATC 2016). Chunk boundaries are
+ * derived from a gear hash over the content, so they survive insertions and deletions, and
+ * identical content yields identical chunks in any file. Normalized chunking keeps chunk sizes
+ * close to the average: a stricter mask is used before the average size, a looser one after.
+ * <p>
+ * Server, tools and client must agree on boundaries, so the parameters and the gear table are
+ * fixed. Changing them invalidates every published chunk hash.
+ */
+public final class FastCdc {
+    public static final int MIN_SIZE = 256 * 1024;
+    public static final int AVG_SIZE = 1024 * 1024;
+    public static final int MAX_SIZE = 4 * 1024 * 1024;
+
+    // Chunk copies in flight per file while their hashes are computed on other workers
+    private static final int MAX_PENDING_CHUNKS = 2;
+
+    // log2(AVG_SIZE) = 20 bits; one more before the average, one less after it
+    private static final long MASK_S = -1L << (64 - 21);
+    private static final long MASK_L = -1L << (64 - 19);
+    private static final long[] GEAR = gearTable();
+
+    private FastCdc() {
+    }
+
+    /**
+     * Hash of a whole file together with its chunks, both computed in a single read.
+     * {@code fileHash} is plain hex; chunk hashes are formatted with
+     * {@link HashAlgorithm#format(String)}. {@code chunks} is null for files too small to be
+     * worth chunking.
+     */
+    public record Result(String fileHash, List<ModChunk> chunks) {
+    }
+
+    /**
+     * Whether a file of this size gets chunks; smaller files would form a single chunk anyway.
+     */
+    public static boolean isChunked(long fileSize) {
+        return fileSize > AVG_SIZE;
+    }
+
+    /**
+     * Reads the file once, computing its hash and, if it is large enough, its
+     * content-defined chunks with their hashes. Memory use is bounded by
+     * twice the maximum chunk size.
+     * <p>
+     * When called from a {@link ForkJoinPool} worker, chunk hashes are forked as subtasks, so
+     * idle workers hash chunks while this thread keeps reading, cutting and hashing the whole
+     * file. At most {@value #MAX_PENDING_CHUNKS} more chunks are held in memory then.
+     */
+    public static Result chunkFile(Path file) throws IOException {
+        return chunkFile(file, HashAlgorithm.SHA256);
+    }
+
+    public static Result chunkFile(Path file, HashAlgorithm algorithm) throws IOException {
+        long size = Files.size(file);
+        if (!isChunked(size)) {
+            return new Result(FileHasher.hash(file, algorithm), null);
+        }
+
+        Hasher fileHasher = algorithm.newHasher();
+        Hasher chunkHasher = algorithm.newHasher();
+        boolean fork = ForkJoinTask.inForkJoinPool();
+        Deque<ForkJoinTask<?>> pending = new ArrayDeque<>();
+        List<ModChunk> chunks = new ArrayList<>();
+        byte[] buffer = new byte[2 * MAX_SIZE];
+        int start = 0;
+        int end = 0;
+        long offset = 0;
+        boolean eof = false;
+        try (InputStream in = Files.newInputStream(file)) {
+            while (true) {
+                // Refill so that a full maximum-size chunk is available unless the file ends first
+                if (!eof && end - start < MAX_SIZE) {
+                    System.arraycopy(buffer, start, buffer, 0, end - start);
+                    end -= start;
+                    start = 0;
+                    int read = in.readNBytes(buffer, end, buffer.length - end);
+                    fileHasher.update(buffer, end, read);
+                    end += read;
+                    eof = end < buffer.length;
+                }
+                if (start == end) {
+                    break;
+                }
+                int length = cut(buffer, start, end - start);
+
+                ModChunk chunk = new ModChunk();
+                chunk.setOffset(offset);
+                chunk.setLength(length);
+                if (fork) {
+                    // The buffer is compacted on the next refill, so the task gets its own copy
+                    byte[] data = Arrays.copyOfRange(buffer, start, start + length);
+                    pending.add(ForkJoinTask.adapt(() -> {
+                        Hasher hasher = algorithm.newHasher();
+                        hasher.update(data, 0, data.length);
+                        chunk.setHash(algorithm.format(hasher.digest()));
+                    }).fork());
+                    if (pending.size() > MAX_PENDING_CHUNKS) {
+                        pending.poll().join();
+                    }
+                } else {
+                    chunkHasher.update(buffer, start, length);
+                    chunk.setHash(algorithm.format(chunkHasher.digest()));
+                }
+                chunks.add(chunk);
+
+                start += length;
+                offset += length;
+            }
+        }
+        for (ForkJoinTask<?> task : pending) {
+            task.join();
+        }
+        if (!chunks.isEmpty()) {
+            chunks.get(chunks.size() - 1).setLastChunk(true);
+        }
+        return new Result(HexFormat.of().formatHex(fileHasher.digest()), chunks);
+    }
+
+    /**
+     * Returns the length of the next chunk in {@code data[offset, offset + available)}.
+     */
+    static int cut(byte[] data, int offset, int available) {
+        if (available <= MIN_SIZE) {
+            return available;
+        }
+        int end = Math.min(available, MAX_SIZE);
+        int normal = Math.min(AVG_SIZE, end);
+        long fingerprint = 0;
+        int i = MIN_SIZE;
+        for (; i < normal; i++) {
+            fingerprint = (fingerprint << 1) + GEAR[data[offset + i] & 0xff];
+            if ((fingerprint & MASK_S) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < end; i++) {
+            fingerprint = (fingerprint << 1) + GEAR[data[offset + i] & 0xff];
+            if ((fingerprint & MASK_L) == 0) {
+                return i + 1;
+            }
+        }
+        return end;
+    }
+
+    /**
+     * Deterministic gear table generated with SplitMix64 from a fixed seed.
+     */
+    private static long[] gearTable() {
+        long[] table = new long[256];
+        long state = 0x4134_5379_6e63_4344L;
+        for (int i = 0; i < table.length; i++) {
+            state += 0x9E3779B97F4A7C15L;
+            long z = state;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            table[i] = z ^ (z >>> 31);
+        }
+        return table;
+    }
+}
@@ -0,0 +1,95 @@
+package com.a4sync.common.sync;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Streaming file hashes, shared by server, tools and client. Files are read through a
+ * {@link FileChannel} into direct buffers taken from a small pool, so memory use stays the same
+ * for a 1 KB file and an 8 GB PBO, and the buffers are not reallocated for every file.
+ * <p>
+ * Memory mapping is deliberately not used: on Windows a mapped file cannot be replaced or
+ * deleted until the mapping is garbage collected, which would break updating installed mods.
+ */
+public final class FileHasher {
+    public static final int BUFFER_SIZE = 1024 * 1024;
+
+    // Enough for every core to hash at once; extra buffers are dropped when returned
+    private static final BlockingQueue<ByteBuffer> BUFFERS =
+        new ArrayBlockingQueue<>(Math.max(2, Runtime.getRuntime().availableProcessors()));
+
+    private FileHasher() {
+    }
+
+    /**
+     * Returns the hex SHA-256 of the file.
+     */
+    public static String hash(Path file) throws IOException {
+        return hash(file, HashAlgorithm.SHA256);
+    }
+
+    /**
+     * Returns the hash of the file in hex, without an algorithm prefix.
+     */
+    public static String hash(Path file, HashAlgorithm algorithm) throws IOException {
+        Hasher hasher = algorithm.newHasher();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            update(hasher, channel, 0, Long.MAX_VALUE);
+        }
+        return HexFormat.of().formatHex(hasher.digest());
+    }
+
+    public static long update(MessageDigest digest, FileChannel channel, long start, long end) throws IOException {
+        return update(Hasher.of(digest), channel, start, end);
+    }
+
+    /**
+     * Feeds {@code [start, end)} of the channel into the hasher, or up to the end of the file
+     * if it is shorter.
+     * @return the number of bytes read
+     */
+    public static long update(Hasher hasher, FileChannel channel, long start, long end) throws IOException {
+        ByteBuffer buffer = acquire();
+        try {
+            long position = start;
+            while (position < end) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), end - position));
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    break;
+                }
+                buffer.flip();
+                hasher.update(buffer);
+                position += read;
+            }
+            return position - start;
+        } finally {
+            release(buffer);
+        }
+    }
+
+    public static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 algorithm not available", e);
+        }
+    }
+
+    private static ByteBuffer acquire() {
+        ByteBuffer buffer = BUFFERS.poll();
+        return buffer != null ? buffer : ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    private static void release(ByteBuffer buffer) {
+        BUFFERS.offer(buffer);
+    }
+}
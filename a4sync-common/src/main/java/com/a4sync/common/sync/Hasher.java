@@ -0,0 +1,63 @@
+package com.a4sync.common.sync;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+
+/**
+ * Incremental hash function of a {@link HashAlgorithm}. Not thread-safe.
+ */
+public interface Hasher {
+
+    void update(byte[] data, int offset, int length);
+
+    /**
+     * Consumes the remaining bytes of the buffer.
+     */
+    default void update(ByteBuffer data) {
+        if (data.hasArray()) {
+            update(data.array(), data.arrayOffset() + data.position(), data.remaining());
+            data.position(data.limit());
+            return;
+        }
+        byte[] chunk = new byte[Math.min(data.remaining(), 8192)];
+        while (data.hasRemaining()) {
+            int length = Math.min(chunk.length, data.remaining());
+            data.get(chunk, 0, length);
+            update(chunk, 0, length);
+        }
+    }
+
+    /**
+     * Returns the hash of everything consumed and resets the hasher.
+     */
+    byte[] digest();
+
+    /**
+     * Discards everything consumed so far.
+     */
+    void reset();
+
+    static Hasher of(MessageDigest digest) {
+        return new Hasher() {
+            @Override
+            public void update(byte[] data, int offset, int length) {
+                digest.update(data, offset, length);
+            }
+
+            @Override
+            public void update(ByteBuffer data) {
+                digest.update(data);
+            }
+
+            @Override
+            public byte[] digest() {
+                return digest.digest();
+            }
+
+            @Override
+            public void reset() {
+                digest.reset();
+            }
+        };
+    }
+}
@@ -0,0 +1,215 @@
+package com.a4sync.common.sync;
+
+import com.a4sync.common.model.ModFile;
+import com.a4sync.common.model.ModIndex;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+
+/**
+ * Merkle tree of a mod, following its folder structure. A file is a leaf whose hash is the file's
+ * content hash; a folder hashes, for each entry by name, whether it is a file or a folder, the
+ * entry's name and the entry's hash. The hash of the root folder is the mod hash.
+ * <p>
+ * Two trees are compared top down, descending only into folders whose hashes differ, so a
+ * changed file is found without looking at the files of unchanged folders. The server lists one
+ * folder of a mod's tree at a time, so a client can do the same against the remote tree and fetch
+ * only the listings of folders that changed. Chunks need no level of their own: the chunk hashes
+ * of a file in the index already tell which parts of it changed.
+ */
+public final class ModTree {
+    private static final byte FILE = 0;
+    private static final byte FOLDER = 1;
+
+    private final HashAlgorithm algorithm;
+    private final Node root = new Node(null);
+
+    /**
+     * One folder of the tree: its hash and the hashes of its direct entries by name, all
+     * formatted like file hashes.
+     */
+    public record Listing(String hash, Map<String, String> folders, Map<String, String> files) {
+    }
+
+    public ModTree(HashAlgorithm algorithm) {
+        this.algorithm = algorithm;
+    }
+
+    /**
+     * The tree of the files in an index, in the index's hash algorithm.
+     */
+    public static ModTree of(ModIndex index) {
+        ModTree tree = new ModTree(HashAlgorithm.forName(index.getHashAlgorithm()));
+        if (index.getFiles() != null) {
+            for (ModFile file : index.getFiles()) {
+                tree.add(file.getPath(), file.getHash());
+            }
+        }
+        return tree;
+    }
+
+    public HashAlgorithm algorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Adds a file or replaces its hash.
+     * @param path path relative to the mod folder, separated by {@code /}
+     * @param hash content hash in hex, with or without algorithm prefix
+     */
+    public ModTree add(String path, String hash) {
+        String[] names = path.split("/");
+        Node folder = root;
+        for (int i = 0; i < names.length - 1; i++) {
+            folder.hash = null;
+            Node child = folder.children.get(names[i]);
+            if (child == null || child.children == null) {
+                child = new Node(null);
+                folder.children.put(names[i], child);
+            }
+            folder = child;
+        }
+        folder.hash = null;
+        folder.children.put(names[names.length - 1], new Node(HexFormat.of().parseHex(HashAlgorithm.hex(hash))));
+        return this;
+    }
+
+    /**
+     * The root hash, without algorithm prefix.
+     */
+    public byte[] root() {
+        return root.hash(algorithm).clone();
+    }
+
+    /**
+     * The root hash formatted like file hashes, as used for {@code Mod.hash}.
+     */
+    public String rootHash() {
+        return algorithm.format(root.hash(algorithm));
+    }
+
+    /**
+     * The folder at the given path, {@code ""} for the root, or empty if there is no such folder.
+     */
+    public Optional<Listing> list(String path) {
+        Node folder = folder(path);
+        if (folder == null) {
+            return Optional.empty();
+        }
+        Map<String, String> folders = new TreeMap<>();
+        Map<String, String> files = new TreeMap<>();
+        folder.children.forEach((name, child) ->
+            (child.children != null ? folders : files).put(name, algorithm.format(child.hash(algorithm))));
+        return Optional.of(new Listing(algorithm.format(folder.hash(algorithm)), folders, files));
+    }
+
+    /**
+     * Number of files below the folder at the given path, or 0 if there is no such folder.
+     */
+    public int fileCount(String path) {
+        Node folder = folder(path);
+        return folder == null ? 0 : folder.fileCount();
+    }
+
+    private Node folder(String path) {
+        Node folder = root;
+        if (!path.isEmpty()) {
+            for (String name : path.split("/")) {
+                folder = folder.children.get(name);
+                if (folder == null || folder.children == null) {
+                    return null;
+                }
+            }
+        }
+        return folder;
+    }
+
+    /**
+     * Paths of the files that were added, removed or changed in {@code other} compared to this
+     * tree, in path order. Both trees must use the same algorithm.
+     */
+    public Set<String> diff(ModTree other) {
+        if (algorithm != other.algorithm) {
+            throw new IllegalArgumentException("Cannot compare " + algorithm.id() + " and " + other.algorithm.id() + " trees");
+        }
+        Set<String> changed = new TreeSet<>();
+        diff("", root, other.root, changed);
+        return changed;
+    }
+
+    private void diff(String prefix, Node left, Node right, Set<String> changed) {
+        if (Arrays.equals(left.hash(algorithm), right.hash(algorithm))) {
+            return;
+        }
+        Set<String> names = new TreeSet<>(left.children.keySet());
+        names.addAll(right.children.keySet());
+        for (String name : names) {
+            Node a = left.children.get(name);
+            Node b = right.children.get(name);
+            String path = prefix + name;
+            if (a != null && b != null && a.children != null && b.children != null) {
+                diff(path + "/", a, b, changed);
+            } else if (a == null || b == null || a.children != null || b.children != null) {
+                // Only on one side, or a file on one side and a folder on the other
+                collectFiles(path, a, changed);
+                collectFiles(path, b, changed);
+            } else if (!Arrays.equals(a.hash, b.hash)) {
+                changed.add(path);
+            }
+        }
+    }
+
+    private static void collectFiles(String path, Node node, Set<String> files) {
+        if (node == null) {
+            return;
+        }
+        if (node.children == null) {
+            files.add(path);
+            return;
+        }
+        for (Map.Entry<String, Node> child : node.children.entrySet()) {
+            collectFiles(path + "/" + child.getKey(), child.getValue(), files);
+        }
+    }
+
+    private static final class Node {
+        // Null for files
+        private final Map<String, Node> children;
+        // For folders computed on demand, and cleared when a file below changes
+        private byte[] hash;
+
+        private Node(byte[] fileHash) {
+            this.children = fileHash == null ? new TreeMap<>() : null;
+            this.hash = fileHash;
+        }
+
+        private int fileCount() {
+            if (children == null) {
+                return 1;
+            }
+            return children.values().stream().mapToInt(Node::fileCount).sum();
+        }
+
+        private byte[] hash(HashAlgorithm algorithm) {
+            if (hash == null) {
+                Hasher hasher = algorithm.newHasher();
+                for (Map.Entry<String, Node> child : children.entrySet()) {
+                    byte[] name = child.getKey().getBytes(StandardCharsets.UTF_8);
+                    byte[] childHash = child.getValue().hash(algorithm);
+                    hasher.update(new byte[] {child.getValue().children == null ? FILE : FOLDER}, 0, 1);
+                    hasher.update(name, 0, name.length);
+                    hasher.update(new byte[1], 0, 1);
+                    hasher.update(childHash, 0, childHash.length);
+                }
+                hash = hasher.digest();
+            }
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,52 @@
+package com.a4sync.common.sync;
+
+/**
+ * rsync's weak rolling checksum over a fixed size window. After {@link #reset} the window
+ * can be advanced one byte at a time in constant time with {@link #roll}.
+ */
+public class RollingChecksum {
+    private final int windowSize;
+    private int a;
+    private int b;
+
+    public RollingChecksum(int windowSize) {
+        this.windowSize = windowSize;
+    }
+
+    /**
+     * Computes the checksum of {@code length} bytes starting at {@code offset}.
+     */
+    public static int of(byte[] data, int offset, int length) {
+        RollingChecksum checksum = new RollingChecksum(length);
+        checksum.reset(data, offset);
+        return checksum.value();
+    }
+
+    /**
+     * Starts a new window covering {@code windowSize} bytes from {@code offset}.
+     */
+    public void reset(byte[] data, int offset) {
+        a = 0;
+        b = 0;
+        for (int i = 0; i < windowSize; i++) {
+            int value = data[offset + i] & 0xff;
+            a += value;
+            b += (windowSize - i) * value;
+        }
+        a &= 0xffff;
+        b &= 0xffff;
+    }
+
+    /**
+     * Slides the window one byte: {@code out} leaves at the front, {@code in} enters at the back.
+     */
+    public void roll(byte out, byte in) {
+        int outValue = out & 0xff;
+        a = (a - outValue + (in & 0xff)) & 0xffff;
+        b = (b - windowSize * outValue + a) & 0xffff;
+    }
+
+    public int value() {
+        return (b << 16) | a;
+    }
+}
@@ -0,0 +1,126 @@
+package com.a4sync.common.sync;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+
+/**
+ * Streaming XXH64 with seed 0 (Yann Collet, xxHash specification v0.1.1). The hash is returned
+ * big-endian, matching the canonical hex form printed by {@code xxhsum}.
+ */
+final class Xxh64 implements Hasher {
+    private static final long P1 = 0x9E3779B185EBCA87L;
+    private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+    private static final long P3 = 0x165667B19E3779F9L;
+    private static final long P4 = 0x85EBCA77C2B2AE63L;
+    private static final long P5 = 0x27D4EB2F165667C5L;
+
+    private static final VarHandle LONG = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle INT = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final byte[] pending = new byte[32];
+    private int pendingLength;
+    private long totalLength;
+    private long v1;
+    private long v2;
+    private long v3;
+    private long v4;
+
+    Xxh64() {
+        reset();
+    }
+
+    @Override
+    public void reset() {
+        v1 = P1 + P2;
+        v2 = P2;
+        v3 = 0;
+        v4 = -P1;
+        pendingLength = 0;
+        totalLength = 0;
+    }
+
+    @Override
+    public void update(byte[] data, int offset, int length) {
+        totalLength += length;
+        int end = offset + length;
+        if (pendingLength > 0) {
+            int take = Math.min(32 - pendingLength, length);
+            System.arraycopy(data, offset, pending, pendingLength, take);
+            pendingLength += take;
+            offset += take;
+            if (pendingLength < 32) {
+                return;
+            }
+            stripe(pending, 0);
+            pendingLength = 0;
+        }
+        for (; offset + 32 <= end; offset += 32) {
+            stripe(data, offset);
+        }
+        System.arraycopy(data, offset, pending, 0, end - offset);
+        pendingLength = end - offset;
+    }
+
+    private void stripe(byte[] data, int offset) {
+        v1 = round(v1, (long) LONG.get(data, offset));
+        v2 = round(v2, (long) LONG.get(data, offset + 8));
+        v3 = round(v3, (long) LONG.get(data, offset + 16));
+        v4 = round(v4, (long) LONG.get(data, offset + 24));
+    }
+
+    @Override
+    public byte[] digest() {
+        long hash;
+        if (totalLength >= 32) {
+            hash = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+            hash = merge(hash, v1);
+            hash = merge(hash, v2);
+            hash = merge(hash, v3);
+            hash = merge(hash, v4);
+        } else {
+            hash = P5;
+        }
+        hash += totalLength;
+
+        int offset = 0;
+        for (; offset + 8 <= pendingLength; offset += 8) {
+            hash ^= round(0, (long) LONG.get(pending, offset));
+            hash = Long.rotateLeft(hash, 27) * P1 + P4;
+        }
+        if (offset + 4 <= pendingLength) {
+            hash ^= ((int) INT.get(pending, offset) & 0xFFFFFFFFL) * P1;
+            hash = Long.rotateLeft(hash, 23) * P2 + P3;
+            offset += 4;
+        }
+        for (; offset < pendingLength; offset++) {
+            hash ^= (pending[offset] & 0xFF) * P5;
+            hash = Long.rotateLeft(hash, 11) * P1;
+        }
+
+        hash ^= hash >>> 33;
+        hash *= P2;
+        hash ^= hash >>> 29;
+        hash *= P3;
+        hash ^= hash >>> 32;
+
+        reset();
+        byte[] result = new byte[8];
+        for (int i = 7; i >= 0; i--) {
+            result[i] = (byte) hash;
+            hash >>>= 8;
+        }
+        return result;
+    }
+
+    private static long round(long accumulator, long input) {
+        accumulator += input * P2;
+        accumulator = Long.rotateLeft(accumulator, 31);
+        return accumulator * P1;
+    }
+
+    private static long merge(long hash, long accumulator) {
+        hash ^= round(0, accumulator);
+        return hash * P1 + P4;
+    }
+}
@@ -0,0 +1,72 @@
+package com.a4sync.common.sync;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HexFormat;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class Xxh64Test {
+
+    @Test
+    void matchesReferenceVectors() {
+        // Canonical xxhsum output with seed 0
+        assertEquals("ef46db3751d8e999", hash(""));
+        assertEquals("d24ec4f1a98c6e5b", hash("a"));
+        assertEquals("44bc2cf5ad770999", hash("abc"));
+        assertEquals("32dd38952c4bc720", hash("xxhash"));
+        assertEquals("fbcea83c8a378bf1", hash("Nobody inspects the spammish repetition"));
+    }
+
+    @Test
+    void matchesReferenceForInputSpanningManyStripes() {
+        assertEquals("ebd35a5960a69ebc", hex(hash(longInput(), 1031)));
+    }
+
+    @Test
+    void streamedUpdatesMatchSingleUpdate() {
+        byte[] data = longInput();
+        byte[] expected = hash(data, data.length);
+        for (int chunkSize : new int[] {1, 3, 7, 31, 32, 33, 100}) {
+            Xxh64 hasher = new Xxh64();
+            for (int offset = 0; offset < data.length; offset += chunkSize) {
+                hasher.update(data, offset, Math.min(chunkSize, data.length - offset));
+            }
+            assertEquals(hex(expected), hex(hasher.digest()), "chunk size " + chunkSize);
+        }
+    }
+
+    @Test
+    void digestResetsHasher() {
+        Xxh64 hasher = new Xxh64();
+        byte[] data = "abc".getBytes(StandardCharsets.US_ASCII);
+        hasher.update(data, 0, data.length);
+        hasher.digest();
+        assertEquals("ef46db3751d8e999", hex(hasher.digest()));
+    }
+
+    // 0x00..0xff four times followed by 0x00..0x06
+    private static byte[] longInput() {
+        byte[] data = new byte[1031];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+
+    private static String hash(String text) {
+        byte[] data = text.getBytes(StandardCharsets.US_ASCII);
+        return hex(hash(data, data.length));
+    }
+
+    private static byte[] hash(byte[] data, int length) {
+        Xxh64 hasher = new Xxh64();
+        hasher.update(data, 0, length);
+        return hasher.digest();
+    }
+
+    private static String hex(byte[] hash) {
+        return HexFormat.of().formatHex(hash);
+    }
+}
@@ -3,6 +3,7 @@ package com.a4sync.server.config;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import java.nio.file.Path;
+import java.time.Duration;
 
 @ConfigurationProperties(prefix = "a4sync")
 public class ModProperties {
@@ -10,6 +11,12 @@ public class ModProperties {
     private boolean authenticationEnabled = false;
     private String repositoryPassword;
     private String repositoryPasswordHash; // BCrypt hash of the password
+    private String hashIndexFile; // Defaults to {rootDirectory}/.a4sync/hash-index.json
+    private String hashAlgorithm = "sha256"; // sha256, blake3 or xxh64; changing it re-hashes all files
+    private Duration catalogRefreshInterval = Duration.ofHours(1); // Zero disables periodic rescans
+    private boolean watchEnabled = true;
+    private Duration watchDebounce = Duration.ofSeconds(5);
+    private Duration watchMaxDelay = Duration.ofMinutes(1);
     private final BCryptPasswordEncoder passwordEncoder = new BCryptPasswordEncoder();
 
     public String getRootDirectory() {
@@ -28,6 +35,54 @@ public class ModProperties {
         return Path.of(rootDirectory, modSetName).toString();
     }
 
+    public String getHashIndexFile() {
+        return hashIndexFile;
+    }
+
+    public void setHashIndexFile(String hashIndexFile) {
+        this.hashIndexFile = hashIndexFile;
+    }
+
+    public String getHashAlgorithm() {
+        return hashAlgorithm;
+    }
+
+    public void setHashAlgorithm(String hashAlgorithm) {
+        this.hashAlgorithm = hashAlgorithm;
+    }
+
+    public Duration getCatalogRefreshInterval() {
+        return catalogRefreshInterval;
+    }
+
+    public void setCatalogRefreshInterval(Duration catalogRefreshInterval) {
+        this.catalogRefreshInterval = catalogRefreshInterval;
+    }
+
+    public boolean isWatchEnabled() {
+        return watchEnabled;
+    }
+
+    public void setWatchEnabled(boolean watchEnabled) {
+        this.watchEnabled = watchEnabled;
+    }
+
+    public Duration getWatchDebounce() {
+        return watchDebounce;
+    }
+
+    public void setWatchDebounce(Duration watchDebounce) {
+        this.watchDebounce = watchDebounce;
+    }
+
+    public Duration getWatchMaxDelay() {
+        return watchMaxDelay;
+    }
+
+    public void setWatchMaxDelay(Duration watchMaxDelay) {
+        this.watchMaxDelay = watchMaxDelay;
+    }
+
     public boolean isAuthenticationEnabled() {
         return authenticationEnabled;
     }
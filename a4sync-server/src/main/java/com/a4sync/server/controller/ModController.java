@@ -1,48 +1,69 @@
 package com.a4sync.server.controller;
 
 import com.a4sync.common.model.A4SyncConfig;
+import com.a4sync.common.model.FileSignature;
+import com.a4sync.common.model.ModFile;
+import com.a4sync.common.model.ModFolder;
+import com.a4sync.common.model.ModIndex;
 import com.a4sync.common.model.ModSet;
 import com.a4sync.common.model.RepositoryInfo;
-import com.a4sync.server.resource.RangeResource;
+import com.a4sync.server.resource.ByteRange;
+import com.a4sync.server.resource.FileRegionWriter;
+import com.a4sync.server.resource.TarStreamWriter;
+import com.a4sync.server.service.FileSignatureService;
+import com.a4sync.server.service.ModCatalog;
 import com.a4sync.server.service.ModSetService;
 import io.swagger.v3.oas.annotations.Operation;
 import io.swagger.v3.oas.annotations.Parameter;
 import io.swagger.v3.oas.annotations.responses.ApiResponse;
 import io.swagger.v3.oas.annotations.responses.ApiResponses;
 import io.swagger.v3.oas.annotations.tags.Tag;
-import org.springframework.core.io.Resource;
-import org.springframework.core.io.UrlResource;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.ZoneId;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Optional;
 
+/**
+ * Catalog endpoints are served from the current {@link ModCatalog} snapshot and carry a strong
+ * ETag plus Last-Modified, so polling clients get a 304 Not Modified while nothing changed.
+ */
 @RestController
 @RequestMapping("/api/v1")
 @Tag(name = "Mod Management", description = "Endpoints for managing and downloading mods and mod sets")
 public class ModController {
     
+    private static final String MOD_CONTENT_TYPE = "application/octet-stream";
+
     private final ModSetService modSetService;
+    private final FileSignatureService signatureService;
 
-    public ModController(ModSetService modSetService) {
+    public ModController(ModSetService modSetService, FileSignatureService signatureService) {
         this.modSetService = modSetService;
+        this.signatureService = signatureService;
     }
 
     @GetMapping("/modsets")
     @Operation(summary = "Get all mod sets", description = "Retrieves a list of all available mod sets from the repository")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Successfully retrieved mod sets"),
+        @ApiResponse(responseCode = "304", description = "Mod sets unchanged since the given ETag"),
         @ApiResponse(responseCode = "500", description = "Internal server error")
     })
     public ResponseEntity<List<ModSet>> getModSets() {
         try {
-            List<ModSet> modSets = modSetService.getAllModSets();
-            return ResponseEntity.ok(modSets);
+            ModCatalog catalog = modSetService.getCatalog();
+            return catalogResponse(catalog, "modsets", catalog.modSets());
         } catch (Exception e) {
             return ResponseEntity.internalServerError().build();
         }
@@ -52,6 +73,7 @@ public class ModController {
     @Operation(summary = "Get specific mod set", description = "Retrieves details of a specific mod set by name")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Successfully retrieved mod set"),
+        @ApiResponse(responseCode = "304", description = "Mod set unchanged since the given ETag"),
         @ApiResponse(responseCode = "404", description = "Mod set not found"),
         @ApiResponse(responseCode = "500", description = "Internal server error")
     })
@@ -59,8 +81,9 @@ public class ModController {
             @Parameter(description = "Name of the mod set", required = true) 
             @PathVariable String name) {
         try {
-            return modSetService.getModSet(name)
-                    .map(ResponseEntity::ok)
+            ModCatalog catalog = modSetService.getCatalog();
+            return catalog.findModSet(name)
+                    .map(modSet -> catalogResponse(catalog, "modset:" + name, modSet))
                     .orElse(ResponseEntity.notFound().build());
         } catch (Exception e) {
             return ResponseEntity.internalServerError().build();
@@ -71,61 +94,204 @@ public class ModController {
     @Operation(summary = "Download mod file", description = "Downloads a specific mod file, supports HTTP Range requests for resumable downloads")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Full file download"),
-        @ApiResponse(responseCode = "206", description = "Partial content (range request)"),
+        @ApiResponse(responseCode = "206", description = "Partial content, multipart/byteranges for multiple ranges"),
         @ApiResponse(responseCode = "404", description = "Mod file not found"),
         @ApiResponse(responseCode = "416", description = "Range not satisfiable")
     })
-    public ResponseEntity<Resource> downloadMod(
+    public void downloadMod(
             @Parameter(description = "Name of the mod set", required = true) 
             @PathVariable String modSetName,
             @Parameter(description = "Name of the mod file", required = true) 
             @PathVariable String modName,
-            @Parameter(description = "HTTP Range header for resumable downloads", example = "bytes=0-1023") 
-            @RequestHeader(value = "Range", required = false) String rangeHeader) {
+            @Parameter(description = "HTTP Range header, single or multiple ranges including suffix ranges", example = "bytes=0-1023,-512") 
+            @RequestHeader(value = "Range", required = false) String rangeHeader,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        Path modPath;
+        long contentLength;
         try {
-            Path modPath = modSetService.getModPath(modSetName, modName);
-            if (!Files.exists(modPath)) {
-                return ResponseEntity.notFound().build();
+            modPath = modSetService.getModPath(modSetName, modName);
+            // Mod folders are served through the index, file and archive endpoints
+            if (!Files.isRegularFile(modPath)) {
+                response.sendError(HttpServletResponse.SC_NOT_FOUND);
+                return;
             }
+            contentLength = Files.size(modPath);
+        } catch (Exception e) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        serveFile(request, response, modPath, contentLength, modName, rangeHeader);
+    }
 
-            Resource resource = new UrlResource(modPath.toUri());
-            long contentLength = Files.size(modPath);
-
-            // Handle range requests for partial downloads
-            if (rangeHeader != null) {
-                String[] ranges = rangeHeader.replace("bytes=", "").split("-");
-                long start = Long.parseLong(ranges[0]);
-                long end = ranges.length > 1 ? Long.parseLong(ranges[1]) : contentLength - 1;
-                long rangeLength = end - start + 1;
-
-                return ResponseEntity.status(206)
-                        .header(HttpHeaders.CONTENT_TYPE, "application/octet-stream")
-                        .header(HttpHeaders.ACCEPT_RANGES, "bytes")
-                        .header(HttpHeaders.CONTENT_RANGE, "bytes %d-%d/%d".formatted(start, end, contentLength))
-                        .header(HttpHeaders.CONTENT_LENGTH, String.valueOf(rangeLength))
-                        .body(new RangeResource(resource, start, rangeLength));
-            }
+    @GetMapping("/modsets/{modSetName}/mods/{modName}/index")
+    @Operation(summary = "Get mod file index", description = "Lists every file of a mod directory with its size and hash")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Successfully retrieved mod index"),
+        @ApiResponse(responseCode = "304", description = "Mod unchanged since the given ETag"),
+        @ApiResponse(responseCode = "404", description = "Mod not found")
+    })
+    public ResponseEntity<ModIndex> getModIndex(
+            @Parameter(description = "Name of the mod set", required = true)
+            @PathVariable String modSetName,
+            @Parameter(description = "Name of the mod folder", required = true)
+            @PathVariable String modName) {
+        try {
+            return modSetService.getModIndex(modSetName, modName)
+                    .map(index -> ResponseEntity.ok()
+                            .eTag("\"" + index.getHash() + "\"")
+                            .cacheControl(CacheControl.noCache())
+                            .body(index))
+                    .orElse(ResponseEntity.notFound().build());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @GetMapping("/modsets/{modSetName}/mods/{modName}/tree")
+    @Operation(summary = "List a folder of a mod", description = "Lists one folder of the mod's Merkle tree: its hash, the hashes of its subfolders and its files, so clients only descend into folders that changed")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Successfully listed the folder"),
+        @ApiResponse(responseCode = "304", description = "Folder unchanged since the given ETag"),
+        @ApiResponse(responseCode = "404", description = "Mod or folder not found")
+    })
+    public ResponseEntity<ModFolder> getModFolder(
+            @Parameter(description = "Name of the mod set", required = true)
+            @PathVariable String modSetName,
+            @Parameter(description = "Name of the mod folder", required = true)
+            @PathVariable String modName,
+            @Parameter(description = "Folder path within the mod, empty for the mod folder", example = "addons")
+            @RequestParam(value = "path", defaultValue = "") String folderPath) {
+        String path = folderPath.replaceAll("^/+|/+$", "");
+        try {
+            return modSetService.getModFolder(modSetName, modName, path)
+                    .map(folder -> ResponseEntity.ok()
+                            .eTag("\"" + folder.getHash() + "\"")
+                            .cacheControl(CacheControl.noCache())
+                            .body(folder))
+                    .orElse(ResponseEntity.notFound().build());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.notFound().build();
+        }
+    }
+
+    @GetMapping("/modsets/{modSetName}/mods/{modName}/files/{*filePath}")
+    @Operation(summary = "Download a file of a mod", description = "Downloads a single file listed in the mod index, supports HTTP Range requests")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Full file download"),
+        @ApiResponse(responseCode = "206", description = "Partial content, multipart/byteranges for multiple ranges"),
+        @ApiResponse(responseCode = "404", description = "File not listed in the mod index"),
+        @ApiResponse(responseCode = "416", description = "Range not satisfiable")
+    })
+    public void downloadModFile(
+            @Parameter(description = "Name of the mod set", required = true)
+            @PathVariable String modSetName,
+            @Parameter(description = "Name of the mod folder", required = true)
+            @PathVariable String modName,
+            @Parameter(description = "Path of the file within the mod", required = true, example = "addons/main.pbo")
+            @PathVariable String filePath,
+            @RequestHeader(value = "Range", required = false) String rangeHeader,
+            HttpServletRequest request,
+            HttpServletResponse response) throws IOException {
+        Optional<ModFile> modFile = findModFile(modSetName, modName, filePath);
+        if (modFile.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        Path file = modSetService.getModPath(modSetName, modName).resolve(modFile.get().getPath());
+        long contentLength;
+        try {
+            contentLength = Files.size(file);
+        } catch (IOException e) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+        response.setHeader(HttpHeaders.ETAG, "\"" + modFile.get().getHash() + "\"");
+        serveFile(request, response, file, contentLength, file.getFileName().toString(), rangeHeader);
+    }
 
-            // Normal full download
+    @GetMapping("/modsets/{modSetName}/mods/{modName}/signatures/{*filePath}")
+    @Operation(summary = "Get block signatures of a file", description = "Rolling checksums and strong hashes of every block of a mod file, used by clients to reuse blocks of an older local copy at any offset")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Successfully computed block signatures"),
+        @ApiResponse(responseCode = "304", description = "File unchanged since the given ETag"),
+        @ApiResponse(responseCode = "404", description = "File not listed in the mod index")
+    })
+    public ResponseEntity<FileSignature> getFileSignature(
+            @Parameter(description = "Name of the mod set", required = true)
+            @PathVariable String modSetName,
+            @Parameter(description = "Name of the mod folder", required = true)
+            @PathVariable String modName,
+            @Parameter(description = "Path of the file within the mod", required = true, example = "addons/main.pbo")
+            @PathVariable String filePath) {
+        Optional<ModFile> modFile = findModFile(modSetName, modName, filePath);
+        if (modFile.isEmpty()) {
+            return ResponseEntity.notFound().build();
+        }
+        try {
+            Path file = modSetService.getModPath(modSetName, modName).resolve(modFile.get().getPath());
+            FileSignature signature = signatureService.getSignature(file, modFile.get().getPath(), modFile.get().getHash());
             return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + modName + "\"")
-                    .header(HttpHeaders.CONTENT_LENGTH, String.valueOf(contentLength))
-                    .body(resource);
-        } catch (Exception e) {
+                    .eTag("\"" + modFile.get().getHash() + "\"")
+                    .cacheControl(CacheControl.noCache())
+                    .body(signature);
+        } catch (IOException e) {
             return ResponseEntity.notFound().build();
         }
     }
 
+    @GetMapping("/modsets/{modSetName}/mods/{modName}/archive")
+    @Operation(summary = "Download a whole mod as tar", description = "Streams all files of the mod index as one uncompressed tar archive, generated on the fly")
+    @ApiResponses(value = {
+        @ApiResponse(responseCode = "200", description = "Tar archive of the mod folder"),
+        @ApiResponse(responseCode = "404", description = "Mod not found")
+    })
+    public void downloadModArchive(
+            @Parameter(description = "Name of the mod set", required = true)
+            @PathVariable String modSetName,
+            @Parameter(description = "Name of the mod folder", required = true)
+            @PathVariable String modName,
+            HttpServletResponse response) throws IOException {
+        Optional<ModIndex> modIndex;
+        Path modPath;
+        try {
+            modPath = modSetService.getModPath(modSetName, modName);
+            modIndex = modSetService.getModIndex(modSetName, modName);
+        } catch (IllegalArgumentException e) {
+            modIndex = Optional.empty();
+            modPath = null;
+        }
+        if (modIndex.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        // Entries are rooted at the mod folder, so the archive extracts to @mod/...
+        String folder = modIndex.get().getName();
+        List<TarStreamWriter.Entry> entries = new ArrayList<>();
+        for (ModFile file : modIndex.get().getFiles()) {
+            entries.add(new TarStreamWriter.Entry(folder + "/" + file.getPath(),
+                    modPath.resolve(file.getPath()), file.getSize()));
+        }
+        response.setContentType("application/x-tar");
+        response.setHeader(HttpHeaders.ETAG, "\"" + modIndex.get().getHash() + "\"");
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + folder + ".tar\"");
+        response.setContentLengthLong(TarStreamWriter.archiveSize(entries));
+        TarStreamWriter.write(entries, response.getOutputStream());
+    }
+
     @GetMapping("/autoconfig")
     @Operation(summary = "Get auto-configuration", description = "Generates automatic mod set configuration for legacy client compatibility")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Successfully generated auto-configuration"),
+        @ApiResponse(responseCode = "304", description = "Auto-configuration unchanged since the given ETag"),
         @ApiResponse(responseCode = "500", description = "Internal server error")
     })
     public ResponseEntity<ModSet> getAutoConfig() {
         try {
-            ModSet autoConfig = modSetService.generateAutoConfig();
-            return ResponseEntity.ok(autoConfig);
+            ModCatalog catalog = modSetService.getCatalog();
+            return catalogResponse(catalog, "autoconfig", catalog.autoConfig());
         } catch (Exception e) {
             return ResponseEntity.internalServerError().build();
         }
@@ -135,12 +301,13 @@ public class ModController {
     @Operation(summary = "Get repository information", description = "Provides comprehensive repository metadata including mod sets count, sizes, and last updated times")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Successfully retrieved repository information"),
+        @ApiResponse(responseCode = "304", description = "Repository information unchanged since the given ETag"),
         @ApiResponse(responseCode = "500", description = "Internal server error")
     })
     public ResponseEntity<RepositoryInfo> getRepositoryInfo() {
         try {
-            RepositoryInfo repositoryInfo = modSetService.generateRepositoryInfo();
-            return ResponseEntity.ok(repositoryInfo);
+            ModCatalog catalog = modSetService.getCatalog();
+            return catalogResponse(catalog, "repository-info", catalog.repositoryInfo());
         } catch (Exception e) {
             return ResponseEntity.internalServerError().build();
         }
@@ -150,12 +317,13 @@ public class ModController {
     @Operation(summary = "Get repository total size", description = "Returns the total size in bytes of all mod files in the repository")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Successfully calculated repository size"),
+        @ApiResponse(responseCode = "304", description = "Repository size unchanged since the given ETag"),
         @ApiResponse(responseCode = "500", description = "Internal server error")
     })
     public ResponseEntity<Long> getRepositorySize() {
         try {
-            long totalSize = modSetService.calculateTotalRepositorySize();
-            return ResponseEntity.ok(totalSize);
+            ModCatalog catalog = modSetService.getCatalog();
+            return catalogResponse(catalog, "repository-size", catalog.totalRepositorySize());
         } catch (Exception e) {
             return ResponseEntity.internalServerError().build();
         }
@@ -165,14 +333,85 @@ public class ModController {
     @Operation(summary = "Get A4Sync configuration", description = "Returns repository configuration in A4Sync format for client auto-discovery")
     @ApiResponses(value = {
         @ApiResponse(responseCode = "200", description = "Successfully generated A4Sync configuration"),
+        @ApiResponse(responseCode = "304", description = "Configuration unchanged since the given ETag"),
         @ApiResponse(responseCode = "500", description = "Internal server error")
     })
     public ResponseEntity<A4SyncConfig> getA4SyncConfig(HttpServletRequest request) {
         try {
+            ModCatalog catalog = modSetService.getCatalog();
             A4SyncConfig config = modSetService.generateA4SyncConfig(request);
-            return ResponseEntity.ok(config);
+            // The config embeds the request's base URL, so it is part of the validator
+            String variant = "a4sync:" + Integer.toHexString(config.getConnection().getBaseUrl().hashCode());
+            return catalogResponse(catalog, variant, config);
         } catch (Exception e) {
             return ResponseEntity.internalServerError().build();
         }
     }
+
+    /**
+     * Builds a 200 response with ETag and Last-Modified taken from the catalog snapshot.
+     * Spring answers with 304 Not Modified on its own when If-None-Match or If-Modified-Since
+     * match these validators, skipping serialization of the body.
+     */
+    private <T> ResponseEntity<T> catalogResponse(ModCatalog catalog, String variant, T body) {
+        String eTag = "\"" + catalog.contentHash() + "-" + Integer.toHexString(variant.hashCode()) + "\"";
+        return ResponseEntity.ok()
+                .eTag(eTag)
+                .lastModified(catalog.createdAt().atZone(ZoneId.systemDefault()))
+                .cacheControl(CacheControl.noCache())
+                .body(body);
+    }
+
+    /**
+     * Writes a file as the response body, honoring the Range header. All ranges are validated
+     * before any body bytes are written. A Range with an If-Range that no longer matches the
+     * ETag or Last-Modified time is ignored, so a client resuming an outdated copy receives the
+     * whole new file instead of parts of two versions.
+     */
+    private void serveFile(HttpServletRequest request, HttpServletResponse response, Path file,
+                           long contentLength, String downloadName, String rangeHeader) throws IOException {
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        response.setDateHeader(HttpHeaders.LAST_MODIFIED, lastModified);
+        if (!ByteRange.ifRangeMatches(request.getHeader(HttpHeaders.IF_RANGE),
+                response.getHeader(HttpHeaders.ETAG), lastModified)) {
+            rangeHeader = null;
+        }
+        // Resolve and validate all ranges before touching the response body
+        Optional<List<ByteRange>> ranges = ByteRange.parse(rangeHeader, contentLength);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        if (ranges.isPresent() && ranges.get().isEmpty()) {
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + contentLength);
+            response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+
+        if (ranges.isPresent()) {
+            List<ByteRange> satisfiable = ranges.get();
+            response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+            if (satisfiable.size() == 1) {
+                ByteRange range = satisfiable.get(0);
+                response.setContentType(MOD_CONTENT_TYPE);
+                response.setHeader(HttpHeaders.CONTENT_RANGE, range.contentRange(contentLength));
+                FileRegionWriter.write(request, response, file, range.start(), range.length());
+            } else {
+                // Several scattered chunks in one round trip
+                FileRegionWriter.writeMultipart(response, file, satisfiable, contentLength, MOD_CONTENT_TYPE);
+            }
+            return;
+        }
+
+        // Normal full download, also used when the Range header has to be ignored
+        response.setContentType(MOD_CONTENT_TYPE);
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + downloadName + "\"");
+        FileRegionWriter.write(request, response, file, 0, contentLength);
+    }
+
+    private Optional<ModFile> findModFile(String modSetName, String modName, String filePath) {
+        String relativePath = filePath.startsWith("/") ? filePath.substring(1) : filePath;
+        try {
+            return modSetService.findModFile(modSetName, modName, relativePath);
+        } catch (IllegalArgumentException e) {
+            return Optional.empty();
+        }
+    }
 }
@@ -0,0 +1,135 @@
+package com.a4sync.server.resource;
+
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A resolved, satisfiable byte range of a representation, inclusive on both ends.
+ */
+public record ByteRange(long start, long end) {
+    // Requests with more ranges than this are answered with the full representation (RFC 9110 14.2)
+    static final int MAX_RANGES = 128;
+
+    private static final String BYTES_UNIT = "bytes=";
+
+    public long length() {
+        return end - start + 1;
+    }
+
+    public String contentRange(long completeLength) {
+        return "bytes %d-%d/%d".formatted(start, end, completeLength);
+    }
+
+    /**
+     * Parses a Range header according to RFC 9110 section 14 against a representation of the
+     * given length. Supports first-last, open ended ({@code 500-}) and suffix ({@code -500})
+     * ranges; overlapping and adjacent ranges are coalesced and the result is sorted. Empty list
+     * elements are skipped, as the list rule of RFC 9110 section 5.6.1 requires.
+     *
+     * @return empty if the header must be ignored (syntax error, other unit, too many ranges),
+     *         otherwise the satisfiable ranges, which is an empty list if none are satisfiable
+     */
+    public static Optional<List<ByteRange>> parse(String header, long completeLength) {
+        if (header == null || !header.regionMatches(true, 0, BYTES_UNIT, 0, BYTES_UNIT.length())) {
+            return Optional.empty();
+        }
+        List<String> specs = new ArrayList<>();
+        for (String rawSpec : header.substring(BYTES_UNIT.length()).split(",")) {
+            if (!rawSpec.isBlank()) {
+                specs.add(rawSpec.trim());
+            }
+        }
+        if (specs.isEmpty() || specs.size() > MAX_RANGES) {
+            return Optional.empty();
+        }
+
+        List<ByteRange> ranges = new ArrayList<>();
+        for (String spec : specs) {
+            int dash = spec.indexOf('-');
+            if (dash < 0) {
+                return Optional.empty();
+            }
+            try {
+                String first = spec.substring(0, dash);
+                String last = spec.substring(dash + 1);
+                if (first.isEmpty()) {
+                    // Suffix range: the final N bytes
+                    long suffixLength = parseNumber(last);
+                    if (suffixLength > 0 && completeLength > 0) {
+                        ranges.add(new ByteRange(Math.max(0, completeLength - suffixLength), completeLength - 1));
+                    }
+                    continue;
+                }
+                long start = parseNumber(first);
+                long end = last.isEmpty() ? Long.MAX_VALUE : parseNumber(last);
+                if (end < start) {
+                    return Optional.empty();
+                }
+                if (start < completeLength) {
+                    ranges.add(new ByteRange(start, Math.min(end, completeLength - 1)));
+                }
+            } catch (NumberFormatException e) {
+                return Optional.empty();
+            }
+        }
+        return Optional.of(coalesce(ranges));
+    }
+
+    /**
+     * Evaluates an If-Range header according to RFC 9110 section 13.1.5: the Range header only
+     * applies if the representation is still the one the client has part of. An entity tag must
+     * match the current ETag by strong comparison, a date must equal the Last-Modified time.
+     *
+     * @param eTag               the current strong ETag, or null if there is none
+     * @param lastModifiedMillis the current Last-Modified time in milliseconds since the epoch
+     * @return true if there is no If-Range header or it matches
+     */
+    public static boolean ifRangeMatches(String ifRange, String eTag, long lastModifiedMillis) {
+        if (ifRange == null) {
+            return true;
+        }
+        String validator = ifRange.trim();
+        if (validator.startsWith("\"") || validator.startsWith("W/")) {
+            // Weak tags never match strongly
+            return eTag != null && !eTag.startsWith("W/") && validator.equals(eTag);
+        }
+        try {
+            long date = ZonedDateTime.parse(validator, DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond();
+            // HTTP dates have second precision
+            return date == lastModifiedMillis / 1000;
+        } catch (DateTimeParseException e) {
+            return false;
+        }
+    }
+
+    private static long parseNumber(String value) {
+        if (value.isEmpty() || !value.chars().allMatch(Character::isDigit)) {
+            throw new NumberFormatException("Invalid range position: " + value);
+        }
+        return Long.parseLong(value);
+    }
+
+    private static List<ByteRange> coalesce(List<ByteRange> ranges) {
+        if (ranges.size() < 2) {
+            return ranges;
+        }
+        ranges.sort(Comparator.comparingLong(ByteRange::start));
+        List<ByteRange> merged = new ArrayList<>();
+        ByteRange current = ranges.get(0);
+        for (ByteRange next : ranges.subList(1, ranges.size())) {
+            if (next.start() <= current.end() + 1) {
+                current = new ByteRange(current.start(), Math.max(current.end(), next.end()));
+            } else {
+                merged.add(current);
+                current = next;
+            }
+        }
+        merged.add(current);
+        return merged;
+    }
+}
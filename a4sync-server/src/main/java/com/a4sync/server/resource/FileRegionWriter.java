@@ -0,0 +1,115 @@
+package com.a4sync.server.resource;
+
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Writes byte regions of a file to the response. A single region of at least
+ * {@code MIN_SENDFILE_SIZE} bytes is handed to the servlet container when it supports sendfile
+ * (Tomcat's NIO connector does by default), which sends it with the kernel's sendfile after the
+ * handler returns, without copying it through the JVM heap. Everything else, smaller regions,
+ * {@code multipart/byteranges} bodies and the parts of tar archives, is streamed to the response
+ * output stream, which copies the bytes through a heap buffer.
+ */
+public final class FileRegionWriter {
+    // Request attributes understood by Tomcat, see org.apache.catalina.Globals
+    private static final String SENDFILE_SUPPORTED_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+
+    // Below this size the bookkeeping of a sendfile outweighs the copy it saves
+    private static final long MIN_SENDFILE_SIZE = 48 * 1024;
+
+    private FileRegionWriter() {
+    }
+
+    /**
+     * Sends {@code length} bytes of {@code file} starting at {@code start} as the response body.
+     * Status and all headers except Content-Length must be set before calling this method.
+     */
+    public static void write(HttpServletRequest request, HttpServletResponse response,
+                             Path file, long start, long length) throws IOException {
+        response.setContentLengthLong(length);
+        if ("HEAD".equals(request.getMethod())) {
+            // Tomcat would send the file even for HEAD once sendfile is requested
+            return;
+        }
+        if (length >= MIN_SENDFILE_SIZE && Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORTED_ATTR))) {
+            request.setAttribute(SENDFILE_FILENAME_ATTR, file.toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTR, start);
+            request.setAttribute(SENDFILE_END_ATTR, start + length);
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            transfer(channel, start, length, response.getOutputStream());
+        }
+    }
+
+    /**
+     * Sends several ranges of {@code file} as a {@code multipart/byteranges} body (RFC 9110 14.6).
+     * The exact Content-Length is computed up front and all parts are streamed from a single
+     * open channel. The status must be set before calling this method.
+     */
+    public static void writeMultipart(HttpServletResponse response, Path file, List<ByteRange> ranges,
+                                      long completeLength, String partContentType) throws IOException {
+        String boundary = HexFormat.of().toHexDigits(ThreadLocalRandom.current().nextLong());
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        long contentLength = 0;
+        for (ByteRange range : ranges) {
+            byte[] header = ("\r\n--" + boundary + "\r\n"
+                    + "Content-Type: " + partContentType + "\r\n"
+                    + "Content-Range: " + range.contentRange(completeLength) + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(header);
+            contentLength += header.length + range.length();
+        }
+        byte[] closing = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        contentLength += closing.length;
+
+        response.setContentType("multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+        OutputStream out = response.getOutputStream();
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            for (int i = 0; i < ranges.size(); i++) {
+                ByteRange range = ranges.get(i);
+                out.write(partHeaders.get(i));
+                transfer(channel, range.start(), range.length(), out);
+            }
+        }
+        out.write(closing);
+    }
+
+    /**
+     * Copies a region of an open channel to the output stream. {@link FileChannel#transferTo}
+     * cannot reach the socket through a servlet stream, so the bytes pass through a temporary
+     * heap buffer of the wrapping channel; this is a plain streaming copy, not a zero-copy path.
+     */
+    public static void transfer(FileChannel channel, long start, long length, OutputStream out) throws IOException {
+        WritableByteChannel target = Channels.newChannel(out);
+        long position = start;
+        long remaining = length;
+        while (remaining > 0) {
+            long written = channel.transferTo(position, remaining, target);
+            if (written <= 0) {
+                throw new EOFException("File ended before the requested range was sent");
+            }
+            position += written;
+            remaining -= written;
+        }
+    }
+}
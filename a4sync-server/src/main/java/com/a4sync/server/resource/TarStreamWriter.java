@@ -0,0 +1,148 @@
+package com.a4sync.server.resource;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+/**
+ * Streams files as an uncompressed POSIX (ustar) tar archive without staging anything on disk.
+ * Names longer than the ustar name field and files of 8 GiB or more get a PAX extended header.
+ * Because the layout only depends on names and sizes, the exact archive size is known up front.
+ */
+public final class TarStreamWriter {
+    private static final int BLOCK_SIZE = 512;
+    private static final int NAME_LENGTH = 100;
+    private static final long MAX_OCTAL_SIZE = 077777777777L;
+    private static final byte[] ZERO_BLOCK = new byte[BLOCK_SIZE];
+
+    /**
+     * A file to add to the archive under the given name.
+     * The size must be the size the file had when it was indexed.
+     */
+    public record Entry(String name, Path file, long size) {
+    }
+
+    private TarStreamWriter() {
+    }
+
+    /**
+     * Returns the exact number of bytes {@link #write} produces for these entries.
+     */
+    public static long archiveSize(List<Entry> entries) {
+        long size = 2L * BLOCK_SIZE;
+        for (Entry entry : entries) {
+            size += headerBytes(entry, 0).length + padded(entry.size());
+        }
+        return size;
+    }
+
+    /**
+     * Writes the archive to {@code out}. File contents are copied with {@link FileChannel#transferTo}.
+     * Fails if a file became shorter than its indexed size, since the archive cannot be fixed up
+     * once headers have been sent.
+     */
+    public static void write(List<Entry> entries, OutputStream out) throws IOException {
+        for (Entry entry : entries) {
+            long lastModified = Files.getLastModifiedTime(entry.file()).toMillis() / 1000;
+            out.write(headerBytes(entry, lastModified));
+            try (FileChannel channel = FileChannel.open(entry.file(), StandardOpenOption.READ)) {
+                FileRegionWriter.transfer(channel, 0, entry.size(), out);
+            }
+            int padding = (int) (padded(entry.size()) - entry.size());
+            out.write(ZERO_BLOCK, 0, padding);
+        }
+        // End of archive marker
+        out.write(ZERO_BLOCK);
+        out.write(ZERO_BLOCK);
+    }
+
+    private static byte[] headerBytes(Entry entry, long lastModified) {
+        byte[] name = entry.name().getBytes(StandardCharsets.UTF_8);
+        boolean longName = name.length > NAME_LENGTH;
+        boolean largeFile = entry.size() > MAX_OCTAL_SIZE;
+        if (!longName && !largeFile) {
+            return header(name, entry.size(), lastModified, '0');
+        }
+
+        StringBuilder records = new StringBuilder();
+        if (longName) {
+            records.append(paxRecord("path", entry.name()));
+        }
+        if (largeFile) {
+            records.append(paxRecord("size", Long.toString(entry.size())));
+        }
+        byte[] pax = records.toString().getBytes(StandardCharsets.UTF_8);
+        byte[] shortName = truncate(name);
+
+        byte[] result = new byte[(int) (2 * BLOCK_SIZE + padded(pax.length))];
+        System.arraycopy(header(("PaxHeaders/" + new String(shortName, StandardCharsets.UTF_8)).getBytes(StandardCharsets.UTF_8),
+            pax.length, lastModified, 'x'), 0, result, 0, BLOCK_SIZE);
+        System.arraycopy(pax, 0, result, BLOCK_SIZE, pax.length);
+        System.arraycopy(header(shortName, largeFile ? 0 : entry.size(), lastModified, '0'), 0,
+            result, (int) (BLOCK_SIZE + padded(pax.length)), BLOCK_SIZE);
+        return result;
+    }
+
+    private static byte[] header(byte[] name, long size, long lastModified, char type) {
+        byte[] header = new byte[BLOCK_SIZE];
+        System.arraycopy(truncate(name), 0, header, 0, Math.min(name.length, NAME_LENGTH));
+        octal(header, 100, 8, 0644);
+        octal(header, 108, 8, 0);
+        octal(header, 116, 8, 0);
+        octal(header, 124, 12, size);
+        octal(header, 136, 12, lastModified);
+        header[156] = (byte) type;
+        System.arraycopy("ustar\u000000".getBytes(StandardCharsets.US_ASCII), 0, header, 257, 8);
+
+        // Checksum is computed with the checksum field itself filled with spaces
+        for (int i = 148; i < 156; i++) {
+            header[i] = ' ';
+        }
+        long checksum = 0;
+        for (byte b : header) {
+            checksum += b & 0xff;
+        }
+        octal(header, 148, 7, checksum);
+        return header;
+    }
+
+    /**
+     * Writes a zero padded, NUL terminated octal number into a header field.
+     */
+    private static void octal(byte[] header, int offset, int length, long value) {
+        String digits = Long.toOctalString(value);
+        String padded = "0".repeat(length - 1 - digits.length()) + digits;
+        System.arraycopy(padded.getBytes(StandardCharsets.US_ASCII), 0, header, offset, length - 1);
+        header[offset + length - 1] = 0;
+    }
+
+    /**
+     * Formats a PAX record, whose leading length field counts the record including itself.
+     */
+    private static String paxRecord(String key, String value) {
+        int payload = (" " + key + "=" + value + "\n").getBytes(StandardCharsets.UTF_8).length;
+        int length = payload + Integer.toString(payload).length();
+        if (Integer.toString(length).length() > Integer.toString(payload).length()) {
+            length++;
+        }
+        return length + " " + key + "=" + value + "\n";
+    }
+
+    private static byte[] truncate(byte[] name) {
+        if (name.length <= NAME_LENGTH) {
+            return name;
+        }
+        byte[] truncated = new byte[NAME_LENGTH];
+        System.arraycopy(name, name.length - NAME_LENGTH, truncated, 0, NAME_LENGTH);
+        return truncated;
+    }
+
+    private static long padded(long size) {
+        return (size + BLOCK_SIZE - 1) / BLOCK_SIZE * BLOCK_SIZE;
+    }
+}
@@ -0,0 +1,366 @@
+package com.a4sync.server.security;
+
+import com.github.luben.zstd.ZstdOutputStream;
+import com.github.luben.zstd.util.Native;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.core.annotation.Order;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.InvalidMediaTypeException;
+import org.springframework.http.MediaType;
+import org.springframework.lang.NonNull;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Compresses catalog and manifest responses: mod sets, mod indexes, block signatures, the
+ * auto-configuration, the repository information and the client configuration. A mod set with
+ * the indexes of its mods runs to megabytes of JSON made of repetitive paths and hashes, which
+ * shrinks to a fraction. The encoding is negotiated from Accept-Encoding, preferring zstd over
+ * gzip, and the body is compressed while it is serialized, so it is never buffered. Files and
+ * archives are left alone, as their ranges refer to the raw bytes.
+ * <p>
+ * Clients may ask for Smile or CBOR instead of JSON with the Accept header; Spring serves those
+ * through the Jackson converters of these formats. Compressed and binary representations carry
+ * the ETag of the controller as a weak ETag, since they are equivalent to the JSON one, so a
+ * conditional request matches whichever representation the client cached. A 304 Not Modified
+ * carries the same Vary header and ETag as the 200 it stands for.
+ */
+@Slf4j
+@Component
+@Order(2)
+public class ManifestEncodingFilter extends OncePerRequestFilter {
+    private static final Set<String> ENCODABLE_TYPES = Set.of(
+        "application/json", "application/x-jackson-smile", "application/cbor");
+    private static final String JSON_TYPE = "application/json";
+    // Catalog endpoints below /api/v1; the configuration is served under several names
+    private static final List<String> PATH_PREFIXES = List.of(
+        "/api/v1/modsets", "/api/v1/autoconfig", "/api/v1/repository/");
+    private static final Set<String> CONFIG_PATHS = Set.of(
+        "/api/v1/config", "/api/v1/a4sync.json", "/api/v1/.a4sync");
+    private static final String ZSTD = "zstd";
+    private static final String GZIP = "gzip";
+    // Fast levels compress manifests nearly as well as slow ones
+    private static final int ZSTD_LEVEL = 3;
+    private static final int GZIP_BUFFER_SIZE = 8192;
+    private static final boolean ZSTD_AVAILABLE = zstdAvailable();
+
+    @Override
+    protected boolean shouldNotFilter(@NonNull HttpServletRequest request) {
+        if (!"GET".equals(request.getMethod()) && !"HEAD".equals(request.getMethod())) {
+            return true;
+        }
+        String path = request.getRequestURI().substring(request.getContextPath().length());
+        return PATH_PREFIXES.stream().noneMatch(path::startsWith) && !CONFIG_PATHS.contains(path);
+    }
+
+    @Override
+    protected void doFilterInternal(
+            @NonNull HttpServletRequest request,
+            @NonNull HttpServletResponse response,
+            @NonNull FilterChain filterChain) throws ServletException, IOException {
+        EncodingResponse encodingResponse = new EncodingResponse(response,
+            negotiate(request.getHeader(HttpHeaders.ACCEPT_ENCODING)),
+            preferredType(request.getHeader(HttpHeaders.ACCEPT)));
+        try {
+            filterChain.doFilter(request, encodingResponse);
+        } finally {
+            encodingResponse.finish();
+        }
+    }
+
+    /**
+     * The content coding to use for an Accept-Encoding header: the accepted one with the highest
+     * quality, zstd on a tie, or null for none.
+     */
+    static String negotiate(String acceptEncoding) {
+        if (acceptEncoding == null) {
+            return null;
+        }
+        String best = null;
+        double bestQuality = 0;
+        for (String element : acceptEncoding.split(",")) {
+            String[] parts = element.split(";");
+            String coding = parts[0].trim().toLowerCase(Locale.ROOT);
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            String candidate = switch (coding) {
+                case ZSTD -> ZSTD_AVAILABLE ? ZSTD : null;
+                case GZIP, "x-gzip", "*" -> GZIP;
+                default -> null;
+            };
+            if (candidate != null && quality > 0
+                    && (quality > bestQuality || quality == bestQuality && candidate.equals(ZSTD))) {
+                best = candidate;
+                bestQuality = quality;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * The media type a 200 response would have for an Accept header: the encodable type with the
+     * highest quality, JSON on a tie as its converter comes first.
+     */
+    static String preferredType(String accept) {
+        if (accept == null || accept.isBlank()) {
+            return JSON_TYPE;
+        }
+        List<MediaType> accepted;
+        try {
+            accepted = MediaType.parseMediaTypes(accept);
+        } catch (InvalidMediaTypeException e) {
+            return JSON_TYPE;
+        }
+        String best = JSON_TYPE;
+        double bestQuality = -1;
+        for (String candidate : List.of(JSON_TYPE, "application/x-jackson-smile", "application/cbor")) {
+            MediaType type = MediaType.parseMediaType(candidate);
+            for (MediaType acceptedType : accepted) {
+                if (acceptedType.includes(type) && acceptedType.getQualityValue() > bestQuality) {
+                    best = candidate;
+                    bestQuality = acceptedType.getQualityValue();
+                }
+            }
+        }
+        return best;
+    }
+
+    private static boolean zstdAvailable() {
+        try {
+            Native.load();
+            return true;
+        } catch (UnsatisfiedLinkError | RuntimeException e) {
+            log.warn("zstd is not available on this platform, compressing with gzip only: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * Decides on the first write whether the body is encoded, once status and content type
+     * are known.
+     */
+    private static final class EncodingResponse extends HttpServletResponseWrapper {
+        private final String encoding;
+        private final String preferredType;
+        private boolean decided;
+        private boolean compressing;
+        private CompressingStream stream;
+        private PrintWriter writer;
+
+        EncodingResponse(HttpServletResponse response, String encoding, String preferredType) {
+            super(response);
+            this.encoding = encoding;
+            this.preferredType = preferredType;
+        }
+
+        private void decide() {
+            if (decided) {
+                return;
+            }
+            decided = true;
+            if (getStatus() == HttpServletResponse.SC_NOT_MODIFIED) {
+                // No body to look at; describe the representation a 200 would have carried
+                addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING);
+                weakenETag(encoding != null || !preferredType.equals(JSON_TYPE));
+                return;
+            }
+            String contentType = getContentType();
+            if (getStatus() != HttpServletResponse.SC_OK || contentType == null) {
+                return;
+            }
+            String mediaType = contentType.split(";")[0].trim().toLowerCase(Locale.ROOT);
+            if (!ENCODABLE_TYPES.contains(mediaType)) {
+                return;
+            }
+            addHeader(HttpHeaders.VARY, HttpHeaders.ACCEPT + ", " + HttpHeaders.ACCEPT_ENCODING);
+            compressing = encoding != null && getHeader(HttpHeaders.CONTENT_ENCODING) == null;
+            weakenETag(compressing || !mediaType.equals(JSON_TYPE));
+            if (compressing) {
+                setHeader(HttpHeaders.CONTENT_ENCODING, encoding);
+                super.setContentLengthLong(-1);
+            }
+        }
+
+        private void weakenETag(boolean weaken) {
+            String eTag = getHeader(HttpHeaders.ETAG);
+            if (weaken && eTag != null && !eTag.startsWith("W/")) {
+                setHeader(HttpHeaders.ETAG, "W/" + eTag);
+            }
+        }
+
+        /**
+         * A 304 never writes a body, so it is decided on before its headers go out.
+         */
+        private void decideIfNotModified() {
+            if (!decided && getStatus() == HttpServletResponse.SC_NOT_MODIFIED && !isCommitted()) {
+                decide();
+            }
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            decide();
+            if (!compressing) {
+                return super.getOutputStream();
+            }
+            if (stream == null) {
+                stream = new CompressingStream(super.getOutputStream(), encoding);
+            }
+            return stream;
+        }
+
+        @Override
+        public PrintWriter getWriter() throws IOException {
+            decide();
+            if (!compressing) {
+                return super.getWriter();
+            }
+            if (writer == null) {
+                writer = new PrintWriter(new OutputStreamWriter(getOutputStream(), getCharacterEncoding()));
+            }
+            return writer;
+        }
+
+        @Override
+        public void setContentLength(int length) {
+            if (!compressing) {
+                super.setContentLength(length);
+            }
+        }
+
+        @Override
+        public void setContentLengthLong(long length) {
+            if (!compressing) {
+                super.setContentLengthLong(length);
+            }
+        }
+
+        @Override
+        public void setHeader(String name, String value) {
+            if (!compressing || !HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                super.setHeader(name, value);
+            }
+        }
+
+        @Override
+        public void addHeader(String name, String value) {
+            if (!compressing || !HttpHeaders.CONTENT_LENGTH.equalsIgnoreCase(name)) {
+                super.addHeader(name, value);
+            }
+        }
+
+        @Override
+        public void flushBuffer() throws IOException {
+            decideIfNotModified();
+            if (writer != null) {
+                writer.flush();
+            }
+            if (stream != null) {
+                stream.flush();
+            }
+            super.flushBuffer();
+        }
+
+        @Override
+        public void reset() {
+            // An error page replaces the body; decide again for it
+            super.reset();
+            decided = false;
+            compressing = false;
+            stream = null;
+            writer = null;
+        }
+
+        @Override
+        public void resetBuffer() {
+            super.resetBuffer();
+            // What the compressor wrote is gone, so the next write starts a new stream
+            stream = null;
+            writer = null;
+        }
+
+        void finish() throws IOException {
+            decideIfNotModified();
+            if (writer != null) {
+                writer.flush();
+            }
+            if (stream != null) {
+                stream.close();
+            }
+        }
+    }
+
+    private static final class CompressingStream extends ServletOutputStream {
+        private final ServletOutputStream target;
+        private final OutputStream compressor;
+        private boolean closed;
+
+        CompressingStream(ServletOutputStream target, String encoding) throws IOException {
+            this.target = target;
+            this.compressor = ZSTD.equals(encoding)
+                ? new ZstdOutputStream(target, ZSTD_LEVEL)
+                : new GZIPOutputStream(target, GZIP_BUFFER_SIZE);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            compressor.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            compressor.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            compressor.flush();
+        }
+
+        /**
+         * Ends the compressed stream, which also closes the response body.
+         */
+        @Override
+        public void close() throws IOException {
+            if (!closed) {
+                closed = true;
+                compressor.close();
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return target.isReady();
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            target.setWriteListener(writeListener);
+        }
+    }
+}
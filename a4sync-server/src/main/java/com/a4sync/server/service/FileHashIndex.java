@@ -0,0 +1,162 @@
+package com.a4sync.server.service;
+
+import com.a4sync.common.model.ModChunk;
+import com.a4sync.common.sync.FastCdc;
+import com.a4sync.common.sync.HashAlgorithm;
+import com.a4sync.server.config.ModProperties;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import lombok.AllArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+import org.springframework.util.StringUtils;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Collectors;
+
+/**
+ * Persistent index of per-file hashes keyed by path, size, modification time and file key.
+ * Files whose attributes are unchanged since the last scan are served from the index instead of
+ * being read again. The index is stored as JSON under the repository root and survives restarts.
+ * Large files also get their content-defined chunks recorded, computed in the same read.
+ * Hashes use the configured {@link HashAlgorithm}; entries of another algorithm are re-hashed.
+ */
+@Slf4j
+@Component
+public class FileHashIndex {
+    private static final String DEFAULT_INDEX_FILE = ".a4sync/hash-index.json";
+
+    private final Path rootPath;
+    private final Path indexFile;
+    private final ObjectMapper objectMapper;
+    private final HashAlgorithm algorithm;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+    private final AtomicBoolean dirty = new AtomicBoolean(false);
+
+    public FileHashIndex(Path rootPath, ObjectMapper modSetObjectMapper, ModProperties modProperties) {
+        this.rootPath = rootPath;
+        this.objectMapper = modSetObjectMapper;
+        this.algorithm = HashAlgorithm.forName(modProperties.getHashAlgorithm());
+        this.indexFile = StringUtils.hasText(modProperties.getHashIndexFile())
+            ? Path.of(modProperties.getHashIndexFile())
+            : rootPath.resolve(DEFAULT_INDEX_FILE);
+        load();
+    }
+
+    public HashAlgorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    /**
+     * Returns the hash of the given file, re-hashing it only if its size,
+     * modification time or file key changed since it was last indexed.
+     */
+    public String getHash(Path file, BasicFileAttributes attrs) throws IOException {
+        return getEntry(file, attrs).getHash();
+    }
+
+    /**
+     * Returns hash and chunks of the given file, re-reading it only if it changed since it was
+     * last indexed or if it was indexed before chunks were recorded.
+     */
+    public Entry getEntry(Path file, BasicFileAttributes attrs) throws IOException {
+        String key = keyFor(file);
+        long lastModified = attrs.lastModifiedTime().toMillis();
+        String fileKey = attrs.fileKey() != null ? attrs.fileKey().toString() : null;
+
+        Entry cached = entries.get(key);
+        if (cached != null && cached.matches(attrs.size(), lastModified, fileKey)
+                && HashAlgorithm.of(cached.getHash()) == algorithm
+                && (cached.getChunks() != null || !FastCdc.isChunked(attrs.size()))) {
+            return cached;
+        }
+
+        FastCdc.Result result = FastCdc.chunkFile(file, algorithm);
+        Entry entry = new Entry(attrs.size(), lastModified, fileKey, algorithm.format(result.fileHash()), result.chunks());
+        entries.put(key, entry);
+        dirty.set(true);
+        log.debug("Hashed {} ({} bytes, {} chunks)", key, attrs.size(),
+            result.chunks() != null ? result.chunks().size() : 0);
+        return entry;
+    }
+
+    /**
+     * Drops index entries below the given directory that are not among the files just scanned.
+     */
+    public void prune(Path directory, Collection<Path> presentFiles) {
+        String prefix = keyFor(directory) + "/";
+        Set<String> presentKeys = presentFiles.stream().map(this::keyFor).collect(Collectors.toSet());
+        boolean removed = entries.keySet().removeIf(key ->
+            key.startsWith(prefix) && !presentKeys.contains(key));
+        if (removed) {
+            dirty.set(true);
+        }
+    }
+
+    /**
+     * Writes the index to disk if it changed since the last save. The file is replaced
+     * atomically so a crash never leaves a truncated index behind.
+     */
+    @PreDestroy
+    public synchronized void save() {
+        if (!dirty.getAndSet(false)) {
+            return;
+        }
+        try {
+            Files.createDirectories(indexFile.getParent());
+            Path tempFile = indexFile.resolveSibling(indexFile.getFileName() + ".tmp");
+            objectMapper.writeValue(tempFile.toFile(), entries);
+            Files.move(tempFile, indexFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            dirty.set(true);
+            log.warn("Failed to save hash index to {}", indexFile, e);
+        }
+    }
+
+    private void load() {
+        if (!Files.exists(indexFile)) {
+            return;
+        }
+        try {
+            Map<String, Entry> stored = objectMapper.readValue(indexFile.toFile(), new TypeReference<Map<String, Entry>>() {});
+            entries.putAll(stored);
+            log.info("Loaded {} entries from hash index {}", stored.size(), indexFile);
+        } catch (IOException e) {
+            log.warn("Ignoring unreadable hash index {}, files will be re-hashed", indexFile, e);
+        }
+    }
+
+    private String keyFor(Path file) {
+        return rootPath.relativize(file).toString().replace('\\', '/');
+    }
+
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class Entry {
+        private long size;
+        private long lastModified;
+        private String fileKey;
+        private String hash;
+        private List<ModChunk> chunks;
+
+        boolean matches(long size, long lastModified, String fileKey) {
+            return this.size == size
+                && this.lastModified == lastModified
+                && (this.fileKey == null || fileKey == null || this.fileKey.equals(fileKey));
+        }
+    }
+}
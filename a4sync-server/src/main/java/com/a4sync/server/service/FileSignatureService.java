@@ -0,0 +1,64 @@
+package com.a4sync.server.service;
+
+import com.a4sync.common.model.FileSignature;
+import com.a4sync.common.sync.BlockSignatures;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Computes block signatures for rsync-style delta downloads on demand. Clients only ask for
+ * the signatures of files they already have an older copy of, so signatures are not stored in
+ * the index but kept in a small LRU cache keyed by file hash.
+ */
+@Slf4j
+@Service
+public class FileSignatureService {
+    private static final int CACHE_SIZE = 64;
+
+    private final Map<String, FileSignature> cache = new LinkedHashMap<>(CACHE_SIZE, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, FileSignature> eldest) {
+            return size() > CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Returns the signature of a mod file, computing it if the file with this hash
+     * has not been requested recently.
+     */
+    public FileSignature getSignature(Path file, String path, String fileHash) throws IOException {
+        synchronized (cache) {
+            FileSignature cached = cache.get(fileHash);
+            if (cached != null) {
+                return withPath(cached, path);
+            }
+        }
+        long start = System.currentTimeMillis();
+        FileSignature signature = BlockSignatures.compute(file, path, fileHash);
+        log.debug("Computed {} block signatures for {} in {} ms",
+            signature.getBlocks().size(), path, System.currentTimeMillis() - start);
+        synchronized (cache) {
+            cache.put(fileHash, signature);
+        }
+        return signature;
+    }
+
+    private static FileSignature withPath(FileSignature cached, String path) {
+        if (path.equals(cached.getPath())) {
+            return cached;
+        }
+        // Identical content at another path, e.g. the same PBO in two mods
+        FileSignature copy = new FileSignature();
+        copy.setPath(path);
+        copy.setSize(cached.getSize());
+        copy.setHash(cached.getHash());
+        copy.setBlockSize(cached.getBlockSize());
+        copy.setBlocks(cached.getBlocks());
+        return copy;
+    }
+}
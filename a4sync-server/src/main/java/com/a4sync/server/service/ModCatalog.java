@@ -0,0 +1,123 @@
+package com.a4sync.server.service;
+
+import com.a4sync.common.model.ModFile;
+import com.a4sync.common.model.ModFolder;
+import com.a4sync.common.model.ModIndex;
+import com.a4sync.common.model.ModSet;
+import com.a4sync.common.model.RepositoryInfo;
+import com.a4sync.common.sync.ModTree;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Immutable snapshot of the repository catalog. A new snapshot with a higher generation
+ * is swapped in whenever a rescan finds that the repository contents changed.
+ * The content hash is stable across restarts and is used for HTTP ETags.
+ * Per-file listings of every mod are kept keyed by the mod's path relative to the root
+ * (e.g. {@code modset/@mod}), so their hashes always agree with the mod hashes. Next to each
+ * listing its files are kept by path, so single files are found without scanning the listing,
+ * and its Merkle tree, so single folders can be listed with their hashes.
+ */
+public record ModCatalog(
+        long generation,
+        String contentHash,
+        LocalDateTime createdAt,
+        List<ModSet> modSets,
+        ModSet autoConfig,
+        RepositoryInfo repositoryInfo,
+        long totalRepositorySize,
+        Map<String, ModIndex> modIndexes,
+        Map<String, Map<String, ModFile>> modFiles,
+        Map<String, ModTree> modTrees) {
+
+    public ModCatalog {
+        modSets = List.copyOf(modSets);
+        modIndexes = Map.copyOf(modIndexes);
+        modFiles = Map.copyOf(modFiles);
+        modTrees = Map.copyOf(modTrees);
+    }
+
+    public ModCatalog(long generation, String contentHash, LocalDateTime createdAt, List<ModSet> modSets,
+                      ModSet autoConfig, RepositoryInfo repositoryInfo, long totalRepositorySize,
+                      Map<String, ModIndex> modIndexes) {
+        this(generation, contentHash, createdAt, modSets, autoConfig, repositoryInfo, totalRepositorySize,
+            modIndexes, filesByPath(modIndexes), trees(modIndexes));
+    }
+
+    private static Map<String, ModTree> trees(Map<String, ModIndex> modIndexes) {
+        Map<String, ModTree> modTrees = new HashMap<>();
+        modIndexes.forEach((modKey, index) -> {
+            ModTree tree = ModTree.of(index);
+            // Computes every folder hash now, so concurrent requests only read the tree
+            tree.root();
+            modTrees.put(modKey, tree);
+        });
+        return modTrees;
+    }
+
+    private static Map<String, Map<String, ModFile>> filesByPath(Map<String, ModIndex> modIndexes) {
+        Map<String, Map<String, ModFile>> modFiles = new HashMap<>();
+        modIndexes.forEach((modKey, index) -> modFiles.put(modKey, index.getFiles().stream()
+            .collect(Collectors.toUnmodifiableMap(ModFile::getPath, Function.identity(), (first, second) -> first))));
+        return modFiles;
+    }
+
+    public Optional<ModSet> findModSet(String name) {
+        return modSets.stream()
+            .filter(modSet -> modSet.getName().equals(name))
+            .findFirst();
+    }
+
+    public Optional<ModIndex> findModIndex(String modKey) {
+        return Optional.ofNullable(modIndexes.get(modKey));
+    }
+
+    /**
+     * Looks up a file of a mod by its path relative to the mod folder.
+     */
+    public Optional<ModFile> findModFile(String modKey, String path) {
+        return Optional.ofNullable(modFiles.getOrDefault(modKey, Map.of()).get(path));
+    }
+
+    /**
+     * Lists a folder of a mod by its path relative to the mod folder, {@code ""} for the mod folder.
+     */
+    public Optional<ModFolder> findModFolder(String modKey, String path) {
+        ModIndex index = modIndexes.get(modKey);
+        ModTree tree = modTrees.get(modKey);
+        if (index == null || tree == null) {
+            return Optional.empty();
+        }
+        Map<String, ModFile> files = modFiles.get(modKey);
+        String prefix = path.isEmpty() ? "" : path + "/";
+        return tree.list(path).map(listing -> {
+            ModFolder folder = new ModFolder();
+            folder.setName(index.getName());
+            folder.setPath(path);
+            folder.setHash(listing.hash());
+            folder.setHashAlgorithm(index.getHashAlgorithm());
+            folder.setFolders(listing.folders().entrySet().stream().map(entry -> {
+                ModFolder.Folder subfolder = new ModFolder.Folder();
+                subfolder.setName(entry.getKey());
+                subfolder.setHash(entry.getValue());
+                return subfolder;
+            }).toList());
+            folder.setFiles(listing.files().keySet().stream().map(name -> files.get(prefix + name)).toList());
+            return folder;
+        });
+    }
+
+    /**
+     * Whether this snapshot describes the same repository contents as another one,
+     * ignoring generation and build time.
+     */
+    boolean hasSameContent(ModCatalog other) {
+        return other != null && contentHash.equals(other.contentHash);
+    }
+}
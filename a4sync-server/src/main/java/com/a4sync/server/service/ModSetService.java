@@ -2,32 +2,59 @@ package com.a4sync.server.service;
 
 import com.a4sync.common.model.A4SyncConfig;
 import com.a4sync.common.model.Mod;
+import com.a4sync.common.model.ModFile;
+import com.a4sync.common.model.ModFolder;
+import com.a4sync.common.model.ModIndex;
 import com.a4sync.common.model.ModSet;
 import com.a4sync.common.model.RepositoryInfo;
+import com.a4sync.common.sync.HashAlgorithm;
+import com.a4sync.common.sync.ModTree;
+import com.a4sync.server.config.ModProperties;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.annotation.PreDestroy;
 import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 import lombok.extern.slf4j.Slf4j;
 
 @Slf4j
 @Service
 public class ModSetService {
-    private static final int BUFFER_SIZE = 8192;
     private final Path rootPath;
-    public ModSetService(Path rootPath, ObjectMapper modSetObjectMapper) {
+    private final ObjectMapper objectMapper;
+    private final FileHashIndex hashIndex;
+    private final AtomicReference<ModCatalog> catalog = new AtomicReference<>();
+    private final ScheduledExecutorService refreshExecutor;
+
+    public ModSetService(Path rootPath, ObjectMapper modSetObjectMapper, FileHashIndex hashIndex,
+                         ModProperties modProperties) {
         this.rootPath = rootPath;
+        this.objectMapper = modSetObjectMapper;
+        this.hashIndex = hashIndex;
         initializeRootPath();
+        this.refreshExecutor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "catalog-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduleRefresh(modProperties.getCatalogRefreshInterval());
     }
 
     private void initializeRootPath() {
@@ -38,38 +65,221 @@ public class ModSetService {
         }
     }
 
-    public List<ModSet> getAllModSets() {
+    private void scheduleRefresh(Duration interval) {
+        // Build the first snapshot in the background so startup is not blocked by the scan
+        refreshExecutor.execute(this::refreshQuietly);
+        if (interval != null && !interval.isZero() && !interval.isNegative()) {
+            refreshExecutor.scheduleWithFixedDelay(this::refreshQuietly,
+                interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private void refreshQuietly() {
+        try {
+            refreshCatalog();
+        } catch (RuntimeException e) {
+            log.error("Failed to refresh mod catalog", e);
+        }
+    }
+
+    @PreDestroy
+    void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    /**
+     * Returns the current catalog snapshot, building it first if no snapshot exists yet.
+     */
+    public ModCatalog getCatalog() {
+        ModCatalog current = catalog.get();
+        if (current != null) {
+            return current;
+        }
+        synchronized (this) {
+            current = catalog.get();
+            return current != null ? current : refreshCatalog();
+        }
+    }
+
+    /**
+     * Rescans the repository and swaps in a new snapshot if its contents changed.
+     * The generation only advances when something actually changed, so it can be
+     * used by clients to detect updates.
+     */
+    public synchronized ModCatalog refreshCatalog() {
+        return swapCatalog(null, null);
+    }
+
+    /**
+     * Incrementally refreshes the catalog after the given paths changed on disk.
+     * Only the mods and mod set listings containing those paths are rescanned;
+     * everything else is carried over from the current snapshot.
+     */
+    public synchronized ModCatalog refreshCatalog(Collection<Path> changedPaths) {
+        if (catalog.get() == null) {
+            return refreshCatalog();
+        }
+        Set<Path> dirtyContainers = new HashSet<>();
+        Set<Path> dirtyMods = new HashSet<>();
+        for (Path changed : changedPaths) {
+            Path relative = rootPath.relativize(changed);
+            if (relative.getNameCount() == 0 || relative.toString().isEmpty()
+                    || relative.getName(0).toString().startsWith(".")) {
+                continue;
+            }
+            Path first = rootPath.resolve(relative.getName(0));
+            if (relative.getName(0).toString().startsWith("@")) {
+                // Mod placed directly in the root, part of the auto-config
+                dirtyContainers.add(rootPath);
+                dirtyMods.add(first);
+            } else if (relative.getNameCount() == 1) {
+                // Mod set directory added, removed or touched
+                dirtyContainers.add(rootPath);
+                dirtyContainers.add(first);
+            } else if (relative.getName(1).toString().startsWith("@")) {
+                dirtyContainers.add(first);
+                dirtyMods.add(first.resolve(relative.getName(1)));
+            }
+            // Anything else (e.g. log files) is not part of the catalog
+        }
+        if (dirtyContainers.isEmpty()) {
+            return catalog.get();
+        }
+        log.debug("Refreshing catalog for {} changed mods in {} directories", dirtyMods.size(), dirtyContainers.size());
+        return swapCatalog(dirtyContainers, dirtyMods);
+    }
+
+    private ModCatalog swapCatalog(Set<Path> dirtyContainers, Set<Path> dirtyMods) {
+        ModCatalog previous = catalog.get();
+        ModCatalog scanned = buildCatalog(previous, dirtyContainers, dirtyMods);
+        if (scanned.hasSameContent(previous)) {
+            return previous;
+        }
+        catalog.set(scanned);
+        log.info("Mod catalog updated to generation {} ({} mod sets)",
+            scanned.generation(), scanned.modSets().size());
+        return scanned;
+    }
+
+    /**
+     * Builds a new snapshot. With {@code dirtyContainers == null} everything is rescanned,
+     * otherwise unchanged mod sets and mods are reused from the previous snapshot.
+     */
+    private ModCatalog buildCatalog(ModCatalog previous, Set<Path> dirtyContainers, Set<Path> dirtyMods) {
+        boolean fullScan = previous == null || dirtyContainers == null;
+        Predicate<Path> isDirtyContainer = path -> fullScan || dirtyContainers.contains(path);
+        Predicate<Path> isDirtyMod = path -> fullScan || dirtyMods.contains(path);
+
+        LocalDateTime createdAt = LocalDateTime.now();
+        Map<String, ModIndex> scannedIndexes = new HashMap<>();
+        List<ModSet> modSets = new ArrayList<>();
+        for (Path modSetPath : listModSetPaths(previous, isDirtyContainer.test(rootPath))) {
+            String name = modSetPath.getFileName().toString();
+            Optional<ModSet> reusable = fullScan ? Optional.empty() : previous.findModSet(name);
+            if (reusable.isPresent() && !isDirtyContainer.test(modSetPath)) {
+                modSets.add(reusable.get());
+            } else {
+                modSets.add(createModSetFromPath(modSetPath, reusable.orElse(null), isDirtyMod, scannedIndexes));
+            }
+        }
+        ModSet autoConfig = isDirtyContainer.test(rootPath)
+            ? createModSetFromPath(rootPath, fullScan ? null : previous.autoConfig(), isDirtyMod, scannedIndexes)
+            : previous.autoConfig();
+        Map<String, ModIndex> modIndexes = collectModIndexes(fullScan ? null : previous, modSets, autoConfig, scannedIndexes);
+
+        // Total size covers all mod files, so logs and index files do not churn the generation
+        long totalSize = autoConfig.getTotalSize() + modSets.stream().mapToLong(ModSet::getTotalSize).sum();
+        long generation = previous != null ? previous.generation() + 1 : 1;
+        return new ModCatalog(generation, computeContentHash(modSets, autoConfig), createdAt, modSets, autoConfig,
+            buildRepositoryInfo(modSets, createdAt), totalSize, modIndexes);
+    }
+
+    /**
+     * Picks the file listing of every mod in the new snapshot, freshly scanned ones first,
+     * falling back to the previous snapshot for mods that were reused.
+     */
+    private Map<String, ModIndex> collectModIndexes(ModCatalog previous, List<ModSet> modSets, ModSet autoConfig,
+                                                    Map<String, ModIndex> scannedIndexes) {
+        Map<Path, ModSet> containers = new LinkedHashMap<>();
+        containers.put(rootPath, autoConfig);
+        modSets.forEach(modSet -> containers.put(rootPath.resolve(modSet.getName()), modSet));
+
+        Map<String, ModIndex> modIndexes = new HashMap<>();
+        containers.forEach((container, modSet) -> {
+            for (Mod mod : modSet.getMods()) {
+                String key = modKey(container.resolve(mod.getName()));
+                ModIndex index = scannedIndexes.containsKey(key) || previous == null
+                    ? scannedIndexes.get(key)
+                    : previous.modIndexes().get(key);
+                if (index != null) {
+                    modIndexes.put(key, index);
+                }
+            }
+        });
+        return modIndexes;
+    }
+
+    private String modKey(Path modPath) {
+        return rootPath.relativize(modPath).toString().replace('\\', '/');
+    }
+
+    private String computeContentHash(List<ModSet> modSets, ModSet autoConfig) {
         try {
-            return Files.list(rootPath)
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(objectMapper.writeValueAsBytes(modSets));
+            digest.update(objectMapper.writeValueAsBytes(autoConfig));
+            return HexFormat.of().formatHex(digest.digest(), 0, 16);
+        } catch (IOException | NoSuchAlgorithmException e) {
+            throw new IllegalStateException("Failed to hash mod catalog", e);
+        }
+    }
+
+    private List<Path> listModSetPaths(ModCatalog previous, boolean relist) {
+        if (!relist) {
+            return previous.modSets().stream()
+                .map(modSet -> rootPath.resolve(modSet.getName()))
+                .collect(Collectors.toList());
+        }
+        try (var paths = Files.list(rootPath)) {
+            return paths
                 .filter(Files::isDirectory)
                 .filter(path -> !path.getFileName().toString().startsWith("."))
-                .map(this::createModSetFromPath)
+                .sorted()
                 .collect(Collectors.toList());
         } catch (IOException e) {
             throw new RuntimeException("Failed to list mod sets", e);
         }
     }
 
+    public List<ModSet> getAllModSets() {
+        return getCatalog().modSets();
+    }
+
     public Optional<ModSet> getModSet(String name) {
         if (!StringUtils.hasText(name)) {
             return Optional.empty();
         }
-        Path modSetPath = rootPath.resolve(name);
-        if (!Files.isDirectory(modSetPath)) {
-            return Optional.empty();
-        }
-        return Optional.of(createModSetFromPath(modSetPath));
+        return getCatalog().findModSet(name);
     }
 
-    private ModSet createModSetFromPath(Path path) {
+    private ModSet createModSetFromPath(Path path, ModSet previous, Predicate<Path> isDirtyMod,
+                                        Map<String, ModIndex> scannedIndexes) {
         ModSet modSet = new ModSet();
         modSet.setName(path.getFileName().toString());
+        Map<String, Mod> previousMods = previous == null ? Map.of() : previous.getMods().stream()
+            .collect(Collectors.toMap(Mod::getName, mod -> mod, (a, b) -> a));
         
-        try {
-            List<Mod> mods = Files.list(path)
+        try (var paths = Files.list(path)) {
+            List<Mod> mods = paths
                 .filter(Files::isDirectory)
                 .filter(p -> p.getFileName().toString().startsWith("@"))
-                .map(this::createModFromDirectoryPath)
+                .sorted()
+                .map(modPath -> {
+                    Mod reusable = previousMods.get(modPath.getFileName().toString());
+                    return reusable != null && !isDirtyMod.test(modPath)
+                        ? Optional.of(reusable)
+                        : createModFromDirectoryPath(modPath, scannedIndexes);
+                })
                 .flatMap(Optional::stream)
                 .collect(Collectors.toList());
             modSet.setMods(mods);
@@ -93,6 +303,8 @@ public class ModSetService {
             
         } catch (IOException e) {
             throw new RuntimeException("Failed to read mods from " + path, e);
+        } finally {
+            hashIndex.save();
         }
         return modSet;
     }
@@ -106,17 +318,42 @@ public class ModSetService {
         return rootPath.resolve(sanitizedSet).resolve(sanitizedMod);
     }
 
+    /**
+     * Returns the file listing of a mod from the current catalog snapshot.
+     */
+    public Optional<ModIndex> getModIndex(String modSetName, String modName) {
+        return getCatalog().findModIndex(modKey(getModPath(modSetName, modName)));
+    }
+
+    /**
+     * Looks up a file of a mod by its path relative to the mod folder. Only files listed in
+     * the index are found, which also rules out path traversal.
+     */
+    public Optional<ModFile> findModFile(String modSetName, String modName, String relativePath) {
+        return getCatalog().findModFile(modKey(getModPath(modSetName, modName)), relativePath);
+    }
+
+    /**
+     * Lists one folder of a mod's tree from the current catalog snapshot.
+     */
+    public Optional<ModFolder> getModFolder(String modSetName, String modName, String folderPath) {
+        return getCatalog().findModFolder(modKey(getModPath(modSetName, modName)), folderPath);
+    }
+
     public ModSet generateAutoConfig() {
-        return createModSetFromPath(rootPath);
+        return getCatalog().autoConfig();
     }
     
     public RepositoryInfo generateRepositoryInfo() {
+        return getCatalog().repositoryInfo();
+    }
+
+    private RepositoryInfo buildRepositoryInfo(List<ModSet> allModSets, LocalDateTime lastUpdated) {
         RepositoryInfo repoInfo = new RepositoryInfo();
         repoInfo.setName("A4Sync Repository");
-        repoInfo.setLastUpdated(LocalDateTime.now());
+        repoInfo.setLastUpdated(lastUpdated);
         
         // Get modset names and count with size information
-        List<ModSet> allModSets = getAllModSets();
         List<ModSet> modSetSummaries = allModSets.stream()
             .map(modSet -> {
                 ModSet summary = new ModSet();
@@ -158,81 +395,81 @@ public class ModSetService {
         config.getRepository().setName("A4Sync Server Repository");
         config.getRepository().setDescription("Auto-generated A4Sync repository configuration");
         config.getRepository().setMaintainer("A4Sync Administrator");
-        config.getRepository().setLastUpdated(LocalDateTime.now());
+        config.getRepository().setLastUpdated(getCatalog().createdAt());
         
         return config;
     }
 
-    private Optional<Mod> createModFromDirectoryPath(Path modDirectoryPath) {
+    private Optional<Mod> createModFromDirectoryPath(Path modDirectoryPath, Map<String, ModIndex> scannedIndexes) {
         try {
             Mod mod = new Mod();
             mod.setName(modDirectoryPath.getFileName().toString());
             
-            // Calculate total size and combined hash for all files in the mod directory
-            List<Path> allFiles = Files.walk(modDirectoryPath)
-                .filter(p -> !Files.isDirectory(p))
-                .collect(Collectors.toList());
+            // Collect all files with their attributes in a single walk
+            Map<Path, BasicFileAttributes> allFiles = new TreeMap<>(Comparator.comparing(Path::toString));
+            Files.walkFileTree(modDirectoryPath, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                    if (attrs.isRegularFile()) {
+                        allFiles.put(file, attrs);
+                    }
+                    return FileVisitResult.CONTINUE;
+                }
+            });
             
             long totalSize = 0;
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            
-            // Sort files by path to ensure consistent hash calculation
-            allFiles.sort(Comparator.comparing(Path::toString));
+            long lastModified = 0;
+            List<ModFile> files = new ArrayList<>(allFiles.size());
+            HashAlgorithm algorithm = hashIndex.getAlgorithm();
+            ModTree tree = new ModTree(algorithm);
             
-            for (Path file : allFiles) {
-                totalSize += Files.size(file);
-                // Add file path to hash for structure consistency
-                digest.update(file.getFileName().toString().getBytes());
-                // Add file content to hash
-                try (InputStream is = Files.newInputStream(file)) {
-                    byte[] buffer = new byte[BUFFER_SIZE];
-                    int read;
-                    while ((read = is.read(buffer)) != -1) {
-                        digest.update(buffer, 0, read);
-                    }
-                }
+            for (Map.Entry<Path, BasicFileAttributes> entry : allFiles.entrySet()) {
+                BasicFileAttributes attrs = entry.getValue();
+                // File content hash and chunks, served from the index when the file is unchanged
+                FileHashIndex.Entry indexed = hashIndex.getEntry(entry.getKey(), attrs);
+                String fileHash = indexed.getHash();
+                totalSize += attrs.size();
+                lastModified = Math.max(lastModified, attrs.lastModifiedTime().toMillis());
+
+                ModFile modFile = new ModFile();
+                modFile.setPath(modDirectoryPath.relativize(entry.getKey()).toString().replace('\\', '/'));
+                modFile.setSize(attrs.size());
+                modFile.setHash(fileHash);
+                modFile.setChunks(indexed.getChunks());
+                files.add(modFile);
+                tree.add(modFile.getPath(), fileHash);
             }
+            hashIndex.prune(modDirectoryPath, allFiles.keySet());
             
             mod.setSize(totalSize);
             
-            // Convert hash to hex string
-            byte[] hash = digest.digest();
-            StringBuilder hexString = new StringBuilder();
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) {
-                    hexString.append('0');
-                }
-                hexString.append(hex);
-            }
-            mod.setHash(hexString.toString());
+            // Merkle root over the folder structure, prefixed like the file hashes so clients
+            // know which algorithm to verify with
+            mod.setHash(tree.rootHash());
             
             // Set relative path from root as version
             String relativePath = rootPath.relativize(modDirectoryPath.getParent()).toString();
             mod.setVersion(relativePath);
+
+            ModIndex modIndex = new ModIndex();
+            modIndex.setName(mod.getName());
+            modIndex.setVersion(mod.getVersion());
+            modIndex.setTotalSize(totalSize);
+            modIndex.setHash(mod.getHash());
+            modIndex.setHashAlgorithm(algorithm.id());
+            modIndex.setLastUpdated(LocalDateTime.ofInstant(Instant.ofEpochMilli(lastModified), ZoneId.systemDefault())
+                .format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+            modIndex.setFiles(files);
+            scannedIndexes.put(modKey(modDirectoryPath), modIndex);
             return Optional.of(mod);
-        } catch (IOException | NoSuchAlgorithmException e) {
+        } catch (IOException e) {
+            log.warn("Failed to read mod directory: {}", modDirectoryPath, e);
             return Optional.empty();
         }
     }
 
     public long calculateTotalRepositorySize() {
-        try {
-            return Files.walk(rootPath)
-                .filter(p -> !Files.isDirectory(p))
-                .mapToLong(path -> {
-                    try {
-                        return Files.size(path);
-                    } catch (IOException e) {
-                        log.warn("Could not get size of file: {}", path, e);
-                        return 0;
-                    }
-                })
-                .sum();
-        } catch (IOException e) {
-            log.error("Failed to calculate repository size", e);
-            return 0;
-        }
+        return getCatalog().totalRepositorySize();
     }
 
 }
@@ -0,0 +1,171 @@
+package com.a4sync.server.service;
+
+import com.a4sync.server.config.ModProperties;
+import jakarta.annotation.PreDestroy;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardWatchEventKinds.*;
+
+/**
+ * Watches the repository root for added, removed or modified mod folders and mod set
+ * directories and incrementally refreshes the catalog in {@link ModSetService}.
+ * Bursts of events (e.g. an rsync in progress) are coalesced: the catalog is only refreshed
+ * once no new events arrived for the debounce period, or after the maximum delay at the latest.
+ */
+@Slf4j
+@Component
+public class RepositoryWatcher {
+    private final Path rootPath;
+    private final ModSetService modSetService;
+    private final Duration debounce;
+    private final Duration maxDelay;
+    private final WatchService watchService;
+    private final Thread watcherThread;
+    private volatile boolean running = true;
+
+    public RepositoryWatcher(Path rootPath, ModSetService modSetService, ModProperties modProperties) throws IOException {
+        this.rootPath = rootPath;
+        this.modSetService = modSetService;
+        this.debounce = modProperties.getWatchDebounce();
+        this.maxDelay = modProperties.getWatchMaxDelay();
+        if (!modProperties.isWatchEnabled()) {
+            this.watchService = null;
+            this.watcherThread = null;
+            log.info("Repository watcher disabled, relying on periodic catalog refresh");
+            return;
+        }
+        this.watchService = rootPath.getFileSystem().newWatchService();
+        this.watcherThread = new Thread(this::run, "repository-watcher");
+        this.watcherThread.setDaemon(true);
+        this.watcherThread.start();
+    }
+
+    private void run() {
+        try {
+            registerRecursively(rootPath);
+            log.info("Watching repository {} for changes", rootPath);
+        } catch (IOException e) {
+            log.error("Failed to register repository watcher on {}", rootPath, e);
+            return;
+        }
+
+        Set<Path> pending = new HashSet<>();
+        boolean overflow = false;
+        long firstEventAt = 0;
+        long lastEventAt = 0;
+
+        while (running) {
+            WatchKey key;
+            try {
+                if (pending.isEmpty() && !overflow) {
+                    key = watchService.take();
+                } else {
+                    long now = System.currentTimeMillis();
+                    long wait = Math.min(lastEventAt + debounce.toMillis(), firstEventAt + maxDelay.toMillis()) - now;
+                    key = wait > 0 ? watchService.poll(wait, TimeUnit.MILLISECONDS) : null;
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                break;
+            }
+
+            if (key != null) {
+                long now = System.currentTimeMillis();
+                if (pending.isEmpty() && !overflow) {
+                    firstEventAt = now;
+                }
+                lastEventAt = now;
+                overflow |= collectEvents(key, pending);
+                continue;
+            }
+
+            flush(pending, overflow);
+            pending.clear();
+            overflow = false;
+        }
+    }
+
+    /**
+     * Adds the paths touched by the key's events to {@code pending}.
+     * @return true if events were lost and a full rescan is needed
+     */
+    private boolean collectEvents(WatchKey key, Set<Path> pending) {
+        Path directory = (Path) key.watchable();
+        boolean overflow = false;
+        for (WatchEvent<?> event : key.pollEvents()) {
+            if (event.kind() == OVERFLOW) {
+                overflow = true;
+                continue;
+            }
+            Path changed = directory.resolve((Path) event.context());
+            if (isIgnored(changed)) {
+                continue;
+            }
+            pending.add(changed);
+            if (event.kind() == ENTRY_CREATE && Files.isDirectory(changed, LinkOption.NOFOLLOW_LINKS)) {
+                try {
+                    registerRecursively(changed);
+                } catch (IOException e) {
+                    log.warn("Failed to watch new directory {}", changed, e);
+                    overflow = true;
+                }
+            }
+        }
+        key.reset();
+        return overflow;
+    }
+
+    private void flush(Set<Path> pending, boolean overflow) {
+        try {
+            if (overflow) {
+                log.info("Repository watcher lost events, rescanning the whole repository");
+                modSetService.refreshCatalog();
+            } else {
+                modSetService.refreshCatalog(pending);
+            }
+        } catch (RuntimeException e) {
+            log.error("Failed to refresh mod catalog after repository change", e);
+        }
+    }
+
+    private void registerRecursively(Path start) throws IOException {
+        Files.walkFileTree(start, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) throws IOException {
+                if (!dir.equals(rootPath) && isIgnored(dir)) {
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                dir.register(watchService, ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFileFailed(Path file, IOException e) {
+                log.warn("Cannot watch {}: {}", file, e.getMessage());
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private boolean isIgnored(Path path) {
+        Path relative = rootPath.relativize(path);
+        return relative.getNameCount() > 0 && relative.getName(0).toString().startsWith(".");
+    }
+
+    @PreDestroy
+    void stop() throws IOException {
+        running = false;
+        if (watchService != null) {
+            watchService.close();
+            watcherThread.interrupt();
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package com.a4sync.server.resource;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Optional;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ByteRangeTest {
+    private static final long LENGTH = 10_000;
+
+    // Sat, 01 Jan 2022 12:00:00 GMT
+    private static final long LAST_MODIFIED = 1_641_038_400_000L;
+    private static final String LAST_MODIFIED_DATE = "Sat, 01 Jan 2022 12:00:00 GMT";
+
+    @Test
+    void parsesFirstLastRange() {
+        assertEquals(Optional.of(List.of(new ByteRange(0, 499))), ByteRange.parse("bytes=0-499", LENGTH));
+    }
+
+    @Test
+    void parsesSuffixRange() {
+        assertEquals(Optional.of(List.of(new ByteRange(9_500, 9_999))), ByteRange.parse("bytes=-500", LENGTH));
+        // A suffix longer than the representation selects all of it
+        assertEquals(Optional.of(List.of(new ByteRange(0, 9_999))), ByteRange.parse("bytes=-20000", LENGTH));
+    }
+
+    @Test
+    void parsesOpenEndedRange() {
+        assertEquals(Optional.of(List.of(new ByteRange(9_000, 9_999))), ByteRange.parse("bytes=9000-", LENGTH));
+        // A last position beyond the end is clamped
+        assertEquals(Optional.of(List.of(new ByteRange(9_000, 9_999))), ByteRange.parse("bytes=9000-20000", LENGTH));
+    }
+
+    @Test
+    void coalescesOverlappingAndAdjacentRanges() {
+        assertEquals(Optional.of(List.of(new ByteRange(0, 299), new ByteRange(500, 599))),
+                ByteRange.parse("bytes=500-599,100-299,0-150", LENGTH));
+        assertEquals(Optional.of(List.of(new ByteRange(0, 199))), ByteRange.parse("bytes=100-199,0-99", LENGTH));
+    }
+
+    @Test
+    void unsatisfiableRangesYieldEmptyList() {
+        assertEquals(Optional.of(List.of()), ByteRange.parse("bytes=10000-", LENGTH));
+        assertEquals(Optional.of(List.of()), ByteRange.parse("bytes=-0", LENGTH));
+        assertEquals(Optional.of(List.of()), ByteRange.parse("bytes=-10", 0));
+    }
+
+    @Test
+    void ignoresMoreThanMaxRanges() {
+        StringBuilder header = new StringBuilder("bytes=0-0");
+        for (int i = 1; i < ByteRange.MAX_RANGES; i++) {
+            header.append(',').append(i * 2).append('-').append(i * 2);
+        }
+        assertEquals(ByteRange.MAX_RANGES, ByteRange.parse(header.toString(), LENGTH).orElseThrow().size());
+
+        header.append(",500-500");
+        assertEquals(Optional.empty(), ByteRange.parse(header.toString(), LENGTH));
+    }
+
+    @Test
+    void skipsEmptyListElements() {
+        assertEquals(Optional.of(List.of(new ByteRange(0, 1), new ByteRange(5, 6))),
+                ByteRange.parse("bytes=0-1,,5-6", LENGTH));
+        assertEquals(Optional.of(List.of(new ByteRange(0, 1))), ByteRange.parse("bytes= ,0-1, ", LENGTH));
+        assertEquals(Optional.empty(), ByteRange.parse("bytes=,,", LENGTH));
+    }
+
+    @Test
+    void ignoresInvalidHeaders() {
+        assertEquals(Optional.empty(), ByteRange.parse(null, LENGTH));
+        assertEquals(Optional.empty(), ByteRange.parse("items=0-1", LENGTH));
+        assertEquals(Optional.empty(), ByteRange.parse("bytes=5-1", LENGTH));
+        assertEquals(Optional.empty(), ByteRange.parse("bytes=abc", LENGTH));
+        assertEquals(Optional.empty(), ByteRange.parse("bytes=1-x", LENGTH));
+    }
+
+    @Test
+    void ifRangeWithoutHeaderMatches() {
+        assertTrue(ByteRange.ifRangeMatches(null, "\"abc\"", LAST_MODIFIED));
+    }
+
+    @Test
+    void ifRangeRequiresStrongEntityTagMatch() {
+        assertTrue(ByteRange.ifRangeMatches("\"abc\"", "\"abc\"", LAST_MODIFIED));
+        assertFalse(ByteRange.ifRangeMatches("\"def\"", "\"abc\"", LAST_MODIFIED));
+        assertFalse(ByteRange.ifRangeMatches("W/\"abc\"", "\"abc\"", LAST_MODIFIED));
+        assertFalse(ByteRange.ifRangeMatches("\"abc\"", "W/\"abc\"", LAST_MODIFIED));
+        assertFalse(ByteRange.ifRangeMatches("\"abc\"", null, LAST_MODIFIED));
+    }
+
+    @Test
+    void ifRangeComparesDatesAtSecondPrecision() {
+        assertTrue(ByteRange.ifRangeMatches(LAST_MODIFIED_DATE, "\"abc\"", LAST_MODIFIED));
+        assertTrue(ByteRange.ifRangeMatches(LAST_MODIFIED_DATE, "\"abc\"", LAST_MODIFIED + 999));
+        assertFalse(ByteRange.ifRangeMatches(LAST_MODIFIED_DATE, "\"abc\"", LAST_MODIFIED + 1_000));
+        assertFalse(ByteRange.ifRangeMatches(LAST_MODIFIED_DATE, "\"abc\"", LAST_MODIFIED - 1));
+    }
+
+    @Test
+    void ifRangeWithUnparseableValueDoesNotMatch() {
+        assertFalse(ByteRange.ifRangeMatches("yesterday", "\"abc\"", LAST_MODIFIED));
+    }
+}
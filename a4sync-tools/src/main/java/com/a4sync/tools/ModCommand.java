@@ -1,6 +1,7 @@
 package com.a4sync.tools;
 
 import com.a4sync.common.model.ModIndex;
+import com.a4sync.common.sync.HashAlgorithm;
 import com.a4sync.tools.config.ConfigManager;
 import com.a4sync.tools.util.ModUtils;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -34,9 +35,15 @@ public class ModCommand {
         @Option(names = {"-v", "--version"}, description = "Mod version")
         private String version = "1.0.0";
         
+        @Option(names = {"-j", "--threads"}, description = "Number of files hashed in parallel (default: number of cores)")
+        private int threads = ModUtils.defaultThreads();
+        
+        @Option(names = {"--hash"}, description = "Hash algorithm: sha256 (default), blake3 (slower), or xxh64 (fastest, not tamper-proof)")
+        private String hashAlgorithm = "sha256";
+        
         @Override
         public Integer call() throws Exception {
-            ModUtils.createModIndex(modPath, version);
+            ModUtils.createModIndex(modPath, version, HashAlgorithm.forName(hashAlgorithm), threads);
             System.out.println("Created mod configuration for: " + modPath);
             return 0;
         }
@@ -50,9 +57,12 @@ public class ModCommand {
         @Parameters(index = "0", description = "Path to mod directory")
         private Path modPath;
         
+        @Option(names = {"-j", "--threads"}, description = "Number of files hashed in parallel (default: number of cores)")
+        private int threads = ModUtils.defaultThreads();
+        
         @Override
         public Integer call() throws Exception {
-            ModUtils.updateModIndex(modPath);
+            ModUtils.updateModIndex(modPath, threads);
             System.out.println("Updated mod configuration for: " + modPath);
             return 0;
         }
@@ -1,19 +1,28 @@
 package com.a4sync.tools.util;
 
-import com.a4sync.common.model.ModChunk;
 import com.a4sync.common.model.ModFile;
 import com.a4sync.common.model.ModIndex;
+import com.a4sync.common.sync.FastCdc;
+import com.a4sync.common.sync.HashAlgorithm;
+import com.a4sync.common.sync.ModTree;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.nio.file.*;
 import java.nio.file.attribute.BasicFileAttributes;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
 /**
  * Utility class for mod management operations
@@ -23,8 +32,6 @@ public class ModUtils {
     private static final ObjectMapper objectMapper = new ObjectMapper()
             .findAndRegisterModules();
     
-    private static final int DEFAULT_CHUNK_SIZE = 50 * 1024 * 1024; // 50MB
-    
     /**
      * Get a properly configured ObjectMapper with JSR310 support
      */
@@ -33,138 +40,235 @@ public class ModUtils {
     }
     
     /**
-     * Creates a mod index for the given mod path
+     * Creates a mod index for the given mod path, hashing on all available cores
      */
     public static void createModIndex(Path modPath, String version) throws IOException {
-        if (!Files.exists(modPath) || !Files.isDirectory(modPath)) {
-            throw new IllegalArgumentException("Mod path does not exist or is not a directory: " + modPath);
-        }
-        
-        String modName = modPath.getFileName().toString();
-        if (!modName.startsWith("@")) {
-            throw new IllegalArgumentException("Mod directory must start with @: " + modName);
-        }
+        createModIndex(modPath, version, HashAlgorithm.SHA256, defaultThreads());
+    }
+    
+    /**
+     * Creates a mod index for the given mod path with the given hash algorithm, hashing on
+     * {@code threads} workers
+     */
+    public static void createModIndex(Path modPath, String version, HashAlgorithm algorithm, int threads) throws IOException {
+        String modName = checkModDirectory(modPath);
         
         System.out.println("Scanning mod directory: " + modPath);
         
-        ModIndex modIndex = new ModIndex();
-        modIndex.setName(modName);
-        modIndex.setVersion(version);
-        modIndex.setLastUpdated(LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
-        
-        List<ModFile> files = new ArrayList<>();
-        final long[] totalSize = {0}; // Use array to make it effectively final
-        
-        // Scan all files in the mod directory
-        Files.walkFileTree(modPath, new SimpleFileVisitor<Path>() {
-            @Override
-            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
-                if (attrs.isRegularFile()) {
-                    Path relativePath = modPath.relativize(file);
-                    long fileSize = attrs.size();
-                    totalSize[0] += fileSize;
-                    
-                    ModFile modFile = new ModFile();
-                    modFile.setPath(relativePath.toString().replace('\\', '/'));
-                    modFile.setSize(fileSize);
-                    modFile.setHash(calculateFileHash(file));
-                    
-                    // Create chunks for large files
-                    if (fileSize > DEFAULT_CHUNK_SIZE) {
-                        modFile.setChunks(createChunks(file, fileSize));
-                    }
-                    
-                    files.add(modFile);
-                    System.out.println("  Added: " + relativePath + " (" + formatSize(fileSize) + ")");
-                }
-                return FileVisitResult.CONTINUE;
-            }
-        });
-        
-        modIndex.setFiles(files);
-        modIndex.setTotalSize(totalSize[0]);
-        modIndex.setHash(calculateModHash(files));
-        
-        // Write mod.json file
-        Path modJsonPath = modPath.resolve("mod.json");
-        objectMapper.writerWithDefaultPrettyPrinter().writeValue(modJsonPath.toFile(), modIndex);
+        long start = System.nanoTime();
+        ModIndex modIndex = indexMod(modPath, modName, version, algorithm, null, threads);
+        for (ModFile file : modIndex.getFiles()) {
+            System.out.println("  Added: " + file.getPath() + " (" + formatSize(file.getSize()) + ")");
+        }
+        writeModIndex(modPath, modIndex);
         
         System.out.println("Created mod.json for " + modName + " (v" + version + ")");
-        System.out.println("  Total files: " + files.size());
-        System.out.println("  Total size: " + formatSize(totalSize[0]));
-        System.out.println("  Hash: " + modIndex.getHash());
+        printSummary(modIndex, start, threads);
     }
     
     /**
      * Updates the mod index for the given mod path
      */
     public static void updateModIndex(Path modPath) throws IOException {
+        updateModIndex(modPath, defaultThreads());
+    }
+    
+    /**
+     * Updates the mod index for the given mod path. Files whose size and modification time match
+     * the existing index keep their hashes and chunks; only new and modified files are read.
+     * Prints the files added, modified and removed, and leaves mod.json untouched if the content
+     * is unchanged. The index keeps its hash algorithm.
+     */
+    public static void updateModIndex(Path modPath, int threads) throws IOException {
         Path modJsonPath = modPath.resolve("mod.json");
         if (!Files.exists(modJsonPath)) {
             throw new IllegalArgumentException("No mod.json found in: " + modPath + ". Use 'mod create' first.");
         }
+        String modName = checkModDirectory(modPath);
         
         ModIndex existingIndex = objectMapper.readValue(modJsonPath.toFile(), ModIndex.class);
         String version = existingIndex.getVersion();
+        HashAlgorithm algorithm = HashAlgorithm.forName(existingIndex.getHashAlgorithm());
         
-        System.out.println("Updating existing mod index (v" + version + ")");
-        createModIndex(modPath, version);
+        System.out.println("Updating existing mod index (v" + version + ", " + algorithm.id() + ")");
+        
+        long start = System.nanoTime();
+        ModIndex modIndex = indexMod(modPath, modName, version, algorithm, existingIndex, threads);
+        
+        // Report by content, so files that were only touched do not show up as modified; the
+        // tree comparison skips folders whose content is the same
+        Map<String, ModFile> previous = filesByPath(existingIndex);
+        Map<String, ModFile> current = filesByPath(modIndex);
+        Set<String> changed = ModTree.of(existingIndex).diff(ModTree.of(modIndex));
+        for (String path : changed) {
+            ModFile file = current.get(path);
+            if (file == null) {
+                System.out.println("  Removed: " + path);
+            } else if (!previous.containsKey(path)) {
+                System.out.println("  Added: " + path + " (" + formatSize(file.getSize()) + ")");
+            } else {
+                System.out.println("  Modified: " + path + " (" + formatSize(file.getSize()) + ")");
+            }
+        }
+        int changes = changed.size();
+        
+        if (changes == 0 && modIndex.getHash().equals(existingIndex.getHash())) {
+            if (!modIndex.getFiles().equals(existingIndex.getFiles())) {
+                // Same content, but modification times moved; record them to skip the reads next time
+                modIndex.setLastUpdated(existingIndex.getLastUpdated());
+                writeModIndex(modPath, modIndex);
+            }
+            System.out.println("No changes in " + modName + " (v" + version + ")");
+        } else {
+            writeModIndex(modPath, modIndex);
+            System.out.println("Updated mod.json for " + modName + " (v" + version + "): " + changes + " file(s) changed");
+        }
+        printSummary(modIndex, start, threads);
     }
     
     /**
-     * Creates chunks for a large file
+     * Indexes all files of the mod, sorted by path so the index is deterministic. Files are
+     * hashed in parallel on a work-stealing pool of {@code threads} workers, and the chunks of
+     * large files are hashed by idle workers while the file is still being read. Files found
+     * unchanged in {@code previous} by size and modification time are not read at all.
      */
-    private static List<ModChunk> createChunks(Path file, long fileSize) {
-        List<ModChunk> chunks = new ArrayList<>();
-        long offset = 0;
+    private static ModIndex indexMod(Path modPath, String modName, String version, HashAlgorithm algorithm,
+                                     ModIndex previous, int threads) throws IOException {
+        Map<String, BasicFileAttributes> scanned = new TreeMap<>();
+        Path indexFile = modPath.resolve("mod.json");
+        Files.walkFileTree(modPath, new SimpleFileVisitor<Path>() {
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                // The index does not list itself
+                if (attrs.isRegularFile() && !file.equals(indexFile)) {
+                    scanned.put(modPath.relativize(file).toString().replace('\\', '/'), attrs);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
         
-        while (offset < fileSize) {
-            long chunkSize = Math.min(DEFAULT_CHUNK_SIZE, fileSize - offset);
-            
-            ModChunk chunk = new ModChunk();
-            chunk.setOffset(offset);
-            chunk.setLength(chunkSize);
-            chunk.setLastChunk(offset + chunkSize >= fileSize);
-            // Note: We're not calculating chunk checksums here for performance
-            // They can be calculated on-demand by the server
+        Map<String, ModFile> previousFiles = filesByPath(previous);
+        long totalSize = 0;
+        List<ModFile> files = new ArrayList<>(scanned.size());
+        try (ForkJoinPool pool = new ForkJoinPool(Math.max(1, threads))) {
+            // Largest files first, so no big file is left running alone at the end
+            Map<String, ForkJoinTask<ModFile>> tasks = new HashMap<>();
+            scanned.entrySet().stream()
+                .filter(entry -> !isUnchanged(previousFiles.get(entry.getKey()), entry.getValue(), algorithm))
+                .sorted(Map.Entry.comparingByValue(Comparator.comparingLong(BasicFileAttributes::size).reversed()))
+                .forEach(entry -> tasks.put(entry.getKey(),
+                    pool.submit(() -> hashFile(modPath, entry.getKey(), entry.getValue(), algorithm))));
             
-            chunks.add(chunk);
-            offset += chunkSize;
+            for (Map.Entry<String, BasicFileAttributes> entry : scanned.entrySet()) {
+                ForkJoinTask<ModFile> task = tasks.get(entry.getKey());
+                ModFile modFile = task != null ? join(task) : previousFiles.get(entry.getKey());
+                totalSize += modFile.getSize();
+                files.add(modFile);
+            }
+            System.out.println("  Hashed " + tasks.size() + " of " + files.size() + " file(s)");
         }
         
-        return chunks;
+        ModIndex modIndex = new ModIndex();
+        modIndex.setName(modName);
+        modIndex.setVersion(version);
+        modIndex.setLastUpdated(LocalDateTime.now().format(DateTimeFormatter.ISO_LOCAL_DATE_TIME));
+        modIndex.setFiles(files);
+        modIndex.setTotalSize(totalSize);
+        modIndex.setHash(calculateModHash(files, algorithm));
+        modIndex.setHashAlgorithm(algorithm.id());
+        return modIndex;
     }
     
     /**
-     * Calculates SHA-256 hash for a file
+     * Whether an indexed file can be reused: same size, modification time and hash algorithm,
+     * and chunks present if the file is large enough to have them.
      */
-    private static String calculateFileHash(Path file) throws IOException {
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(Files.readAllBytes(file));
-            return "sha256:" + bytesToHex(hash);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 algorithm not available", e);
+    private static boolean isUnchanged(ModFile indexed, BasicFileAttributes attrs, HashAlgorithm algorithm) {
+        return indexed != null
+            && indexed.getHash() != null
+            && HashAlgorithm.of(indexed.getHash()) == algorithm
+            && indexed.getLastModified() != null
+            && indexed.getSize() == attrs.size()
+            && indexed.getLastModified() == attrs.lastModifiedTime().toMillis()
+            && (indexed.getChunks() != null || !FastCdc.isChunked(attrs.size()));
+    }
+    
+    private static Map<String, ModFile> filesByPath(ModIndex index) {
+        Map<String, ModFile> files = new TreeMap<>();
+        if (index != null && index.getFiles() != null) {
+            for (ModFile file : index.getFiles()) {
+                files.put(file.getPath(), file);
+            }
+        }
+        return files;
+    }
+    
+    private static String checkModDirectory(Path modPath) {
+        if (!Files.exists(modPath) || !Files.isDirectory(modPath)) {
+            throw new IllegalArgumentException("Mod path does not exist or is not a directory: " + modPath);
+        }
+        
+        String modName = modPath.getFileName().toString();
+        if (!modName.startsWith("@")) {
+            throw new IllegalArgumentException("Mod directory must start with @: " + modName);
         }
+        return modName;
+    }
+    
+    private static void writeModIndex(Path modPath, ModIndex modIndex) throws IOException {
+        Path modJsonPath = modPath.resolve("mod.json");
+        objectMapper.writerWithDefaultPrettyPrinter().writeValue(modJsonPath.toFile(), modIndex);
+    }
+    
+    private static void printSummary(ModIndex modIndex, long startNanos, int threads) {
+        System.out.println("  Total files: " + modIndex.getFiles().size());
+        System.out.println("  Total size: " + formatSize(modIndex.getTotalSize()));
+        System.out.printf("  Indexed in %.1f s on %d threads%n", (System.nanoTime() - startNanos) / 1e9, Math.max(1, threads));
+        System.out.println("  Hash: " + modIndex.getHash());
+    }
+    
+    public static int defaultThreads() {
+        return Runtime.getRuntime().availableProcessors();
     }
     
     /**
-     * Calculates overall mod hash based on file hashes
+     * Hashes one file and splits it into content-defined chunks in a single read
      */
-    private static String calculateModHash(List<ModFile> files) {
+    private static ModFile hashFile(Path modPath, String relativePath, BasicFileAttributes attrs,
+                                    HashAlgorithm algorithm) throws IOException {
+        FastCdc.Result result = FastCdc.chunkFile(modPath.resolve(relativePath), algorithm);
+        ModFile modFile = new ModFile();
+        modFile.setPath(relativePath);
+        modFile.setSize(attrs.size());
+        modFile.setLastModified(attrs.lastModifiedTime().toMillis());
+        modFile.setHash(algorithm.id() + ":" + result.fileHash());
+        modFile.setChunks(result.chunks());
+        return modFile;
+    }
+    
+    private static <T> T join(ForkJoinTask<T> task) throws IOException {
         try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            
-            // Hash all file hashes together for a mod hash
-            for (ModFile file : files) {
-                digest.update(file.getHash().getBytes());
+            return task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException io) {
+                throw io;
             }
-            
-            byte[] hash = digest.digest();
-            return "sha256:" + bytesToHex(hash);
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException("SHA-256 algorithm not available", e);
+            throw new IOException(e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while hashing files");
+        }
+    }
+    
+    /**
+     * Calculates overall mod hash: the root of the Merkle tree over the mod's files
+     */
+    private static String calculateModHash(List<ModFile> files, HashAlgorithm algorithm) {
+        ModTree tree = new ModTree(algorithm);
+        for (ModFile file : files) {
+            tree.add(file.getPath(), file.getHash());
         }
+        return algorithm.id() + ":" + bytesToHex(tree.root());
     }
     
     /**